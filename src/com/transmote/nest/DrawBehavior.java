@@ -0,0 +1,46 @@
+/*
+ * This file is part of Nest.
+ * Nest - http://transmote.com/nest/ is a
+ * derivative of Processing - http://processing.org/
+ * Copyright (C) 2011, Eric Socolofsky
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.transmote.nest;
+
+import processing.core.PApplet;
+
+/**
+ * <p>
+ * Behavior performed during a NestSprite's draw() phase, in place of its <tt>draw()</tt> method.
+ * Assigned via {@link NestSprite#setDraw(DrawBehavior)}.
+ * </p><p>
+ * Has a single method, so on Java 8 and later it may be implemented with a lambda,
+ * e.g. <tt>sprite.setDraw((p, s) -&gt; p.rect(-50, -50, 100, 100));</tt>
+ * </p>
+ *
+ * @author		Eric Socolofsky
+ */
+public interface DrawBehavior {
+	/**
+	 * Called once per frame, in place of <tt>sprite.draw()</tt>,
+	 * with the coordinate space of <tt>sprite</tt> already applied.
+	 * 
+	 * @param	p		The PApplet to which <tt>sprite</tt>'s display list belongs.
+	 * @param	sprite	The NestSprite being drawn.
+	 */
+	public void draw (PApplet p, NestSprite sprite);
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of Nest.
+ * Nest - http://transmote.com/nest/ is a
+ * derivative of Processing - http://processing.org/
+ * Copyright (C) 2011, Eric Socolofsky
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.transmote.nest;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import processing.core.PGraphics;
+
+/**
+ * <p>
+ * Per-frame settings and state of one NestSpriteContainer's display list traversals,
+ * passed down through <tt>prerender()</tt>, <tt>render()</tt>, and event dispatch.
+ * Each NestSpriteContainer owns one; each independentUpdate subtree prerendered on
+ * a ForkJoinPool worker gets its own, forked from its parent's, whose counters are
+ * merged back into the parent's once the subtree is joined.
+ * </p><p>
+ * Settings are written by the NestSpriteContainer before each pass;
+ * state is maintained by the NestSprites visited.
+ * </p>
+ *
+ * @author		Eric Socolofsky
+ */
+final class FrameContext {
+	//-----<PRERENDER>-----------------------------------------------//
+	/** Serial number of the current prerender() pass; each NestSprite visited is stamped with it. */
+	int prerenderSerial = 0;
+	
+	/** zSortingEnabled setting of the NestSpriteContainer. */
+	boolean zSorting = false;
+	
+	/** Pool that runs independentUpdate subtrees during the current prerender() pass, if parallel update is enabled. */
+	ForkJoinPool pool = null;
+	
+	/**
+	 * Serial number and start time of the current update pass, and the time by which its
+	 * update budget is spent (if updateBudgeted), after which low-priority updates are deferred.
+	 */
+	int updateFrame = 0;
+	long updateTimeNanos = 0;
+	boolean updateBudgeted = false;
+	long updateDeadlineNanos = 0;
+	
+	/**
+	 * Fixed-timestep update: serial number of the current update step (0 when not in use),
+	 * and the fraction of a step elapsed since it, by which render() interpolates transforms.
+	 */
+	int updateStep = 0;
+	float renderInterpolation = 1.0f;
+	//-----</PRERENDER>----------------------------------------------//
+	
+	
+	//-----<RENDER>--------------------------------------------------//
+	/**
+	 * Culling settings; a null cullRect culls against each renderer's viewport.
+	 * cullMatrix is the matrix of PApplet.g when the render pass began,
+	 * through which NestSprites drawing into PApplet.g are culled; null if the identity.
+	 */
+	boolean culling = false;
+	Rectangle2D.Float cullRect = null;
+	AffineTransform cullMatrix = null;
+	
+	/**
+	 * When set, 2D renderers are loaded with each NestSprite's accumulated matrix
+	 * rather than having transforms pushed onto their matrix stack.
+	 * managedMatrix is the accumulated matrix of the innermost NestSprite drawing into PApplet.g.
+	 */
+	boolean managedMatrixEnabled = false;
+	AffineTransform managedMatrix = null;
+	
+	/** Blend mode set at the current point in the display list. */
+	int blendMode = NestSprite.NO_BLEND_MODE;
+	
+	/** Offscreen buffer currently being filled by a cacheAsBitmap NestSprite, if any. */
+	PGraphics bitmapTarget = null;
+	
+	/** Offscreen renderers (set via setRenderer()) drawn into during the current frame. */
+	final ArrayList<NestSprite.RenderLayer> renderLayers = new ArrayList<NestSprite.RenderLayer>();
+	//-----</RENDER>-------------------------------------------------//
+	
+	
+	//-----<STATS>---------------------------------------------------//
+	/**
+	 * Per-frame counters for NestSpriteContainer.stats(), maintained only while statsEnabled is set,
+	 * and collected and reset by NestStats at the end of each frame.
+	 */
+	boolean statsEnabled = false;
+	int visited = 0;
+	int updated = 0;
+	int drawn = 0;
+	int culled = 0;
+	int hitTested = 0;
+	int maxEventDepth = 0;
+	
+	/** Profiler of the NestSpriteContainer, if it is timing the current frame; otherwise null. */
+	NestProfiler profiler = null;
+	//-----</STATS>--------------------------------------------------//
+	
+	
+	/**
+	 * Copy the prerender settings and state of <tt>parent</tt>, with counters at zero,
+	 * for an independentUpdate subtree about to be prerendered on a worker thread.
+	 */
+	void fork (FrameContext parent) {
+		prerenderSerial = parent.prerenderSerial;
+		zSorting = parent.zSorting;
+		pool = parent.pool;
+		updateFrame = parent.updateFrame;
+		updateTimeNanos = parent.updateTimeNanos;
+		updateBudgeted = parent.updateBudgeted;
+		updateDeadlineNanos = parent.updateDeadlineNanos;
+		updateStep = parent.updateStep;
+		statsEnabled = parent.statsEnabled;
+		profiler = parent.profiler;
+		resetCounters();
+	}
+	
+	/**
+	 * Add the counters of a context forked from this one, once its subtree has been joined.
+	 */
+	void join (FrameContext forked) {
+		visited += forked.visited;
+		updated += forked.updated;
+		drawn += forked.drawn;
+		culled += forked.culled;
+		hitTested += forked.hitTested;
+		maxEventDepth = Math.max(maxEventDepth, forked.maxEventDepth);
+	}
+	
+	void resetCounters () {
+		visited = 0;
+		updated = 0;
+		drawn = 0;
+		culled = 0;
+		hitTested = 0;
+		maxEventDepth = 0;
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of Nest.
+ * Nest - http://transmote.com/nest/ is a
+ * derivative of Processing - http://processing.org/
+ * Copyright (C) 2011, Eric Socolofsky
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.transmote.nest;
+
+import com.transmote.nest.events.Event;
+
+/**
+ * <p>
+ * Notified at the start and end of each phase of a display list's frame: the <tt>update()</tt> pass,
+ * the render pass, and the dispatch of each event, with the number of NestSprites involved.
+ * Assigned via {@link NestSpriteContainer#setFrameListener(NestFrameListener)};
+ * with no listener assigned, the cost is a single null check per phase.
+ * </p><p>
+ * Intended for bridging Nest into external profiling and monitoring tools.
+ * e.g. to record Java Flight Recorder events (Java 11 and later):
+ * <pre>
+ * class NestUpdateEvent extends jdk.jfr.Event {
+ *     int spritesVisited, spritesUpdated;
+ * }
+ * 
+ * spriteContainer.setFrameListener(new NestFrameListener() {
+ *     NestUpdateEvent update;
+ *     public void beginUpdate (NestSpriteContainer container) {
+ *         update = new NestUpdateEvent();
+ *         update.begin();
+ *     }
+ *     public void endUpdate (NestSpriteContainer container, int visited, int updated) {
+ *         if (update.shouldCommit()) {
+ *             update.spritesVisited = visited;
+ *             update.spritesUpdated = updated;
+ *             update.commit();
+ *         }
+ *     }
+ *     ...
+ * });
+ * </pre>
+ * </p><p>
+ * Each phase's begin and end are called on the same thread.
+ * Event dispatch may nest, if an event handler triggers another event.
+ * </p>
+ *
+ * @author		Eric Socolofsky
+ */
+public interface NestFrameListener {
+	/**
+	 * Called before the <tt>update()</tt> pass, including changes applied from
+	 * {@link NestSpriteContainer#queueAddChild(NestSprite, NestSprite)} et al.
+	 */
+	public void beginUpdate (NestSpriteContainer container);
+	
+	/**
+	 * Called after the <tt>update()</tt> pass.
+	 * 
+	 * @param	spritesVisited	Number of NestSprites visited by the pass, including those not updated.
+	 * @param	spritesUpdated	Number of NestSprites whose <tt>update()</tt> was called.
+	 */
+	public void endUpdate (NestSpriteContainer container, int spritesVisited, int spritesUpdated);
+	
+	/**
+	 * Called before the display list is drawn.
+	 */
+	public void beginRender (NestSpriteContainer container);
+	
+	/**
+	 * Called after the display list is drawn.
+	 * 
+	 * @param	spritesDrawn	Number of NestSprites whose <tt>draw()</tt> was called.
+	 * @param	spritesCulled	Number of NestSprites skipped by culling, with their subtrees.
+	 */
+	public void endRender (NestSpriteContainer container, int spritesDrawn, int spritesCulled);
+	
+	/**
+	 * Called before an event is dispatched through the display list.
+	 * 
+	 * @param	evt		The event being dispatched; see {@link Event#type()}.
+	 */
+	public void beginEvent (NestSpriteContainer container, Event evt);
+	
+	/**
+	 * Called after an event has been dispatched through the display list.
+	 * 
+	 * @param	evt					The event dispatched.
+	 * @param	spritesHitTested	Number of NestSprites tested against the event's location.
+	 */
+	public void endEvent (NestSpriteContainer container, Event evt, int spritesHitTested);
+}
@@ -0,0 +1,266 @@
+/*
+ * This file is part of Nest.
+ * Nest - http://transmote.com/nest/ is a
+ * derivative of Processing - http://processing.org/
+ * Copyright (C) 2011, Eric Socolofsky
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.transmote.nest;
+
+import java.util.Random;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+
+/**
+ * <p>
+ * A NestSprite that emits, moves, and draws many particles.
+ * Particles are not NestSprites; the position, velocity, life, size, and color
+ * of each are kept in parallel arrays, all particles are updated in a single loop
+ * within <tt>update()</tt>, and drawn in a single shape within <tt>draw()</tt>.
+ * This allows tens of thousands of particles, where that many NestSprites
+ * would cost too much in allocation and display list traversal.
+ * </p><p>
+ * Particles are emitted from, and move within, the coordinate space of the NestParticleSystem,
+ * so they follow its transform, <tt>visible</tt>, and <tt>blendMode</tt> like the content of any NestSprite.
+ * Velocities are in pixels per update, and lifetimes in updates.
+ * </p><p>
+ * Particles do not contribute to the bounds rect of the NestParticleSystem;
+ * set its bounds rect to enable culling and hit testing.
+ * </p>
+ *
+ * @author		Eric Socolofsky
+ */
+public class NestParticleSystem extends NestSprite {
+	/**
+	 * Number of particles emitted per update; fractional rates accumulate across updates.
+	 */
+	public float emissionRate = 0;
+	
+	/**
+	 * Direction in which particles are emitted, in radians.
+	 */
+	public float emitAngle = 0;
+	
+	/**
+	 * Width of the range of directions in which particles are emitted, in radians, centered on <tt>emitAngle</tt>.
+	 * Defaults to <tt>TWO_PI</tt> (all directions).
+	 */
+	public float emitSpread = PConstants.TWO_PI;
+	
+	/** Minimum speed of emitted particles, in pixels per update. */
+	public float minSpeed = 1;
+	/** Maximum speed of emitted particles, in pixels per update. */
+	public float maxSpeed = 2;
+	/** Minimum lifetime of emitted particles, in updates. */
+	public float minLife = 60;
+	/** Maximum lifetime of emitted particles, in updates. */
+	public float maxLife = 60;
+	/** Minimum size (point stroke weight, or quad width) of emitted particles. */
+	public float minSize = 2;
+	/** Maximum size (point stroke weight, or quad width) of emitted particles. */
+	public float maxSize = 2;
+	
+	/** Color of particles when emitted. */
+	public int startColor = 0xFFFFFFFF;
+	/** Color of particles at the end of their lifetime; particle color is interpolated between the two. */
+	public int endColor = 0x00FFFFFF;
+	
+	/** Acceleration applied to all particles along the x-axis, in pixels per update per update. */
+	public float gravityX = 0;
+	/** Acceleration applied to all particles along the y-axis, in pixels per update per update. */
+	public float gravityY = 0;
+	/** Fraction of velocity lost per update, from 0 (none) to 1 (all). */
+	public float drag = 0;
+	
+	/**
+	 * <tt>POINTS</tt> to draw each particle as a point, with a stroke weight of its size,
+	 * or <tt>QUADS</tt> to draw each as a filled square.  Defaults to <tt>POINTS</tt>.
+	 * Changing the stroke weight is costly with some renderers,
+	 * so in <tt>POINTS</tt> mode, keep <tt>minSize</tt> and <tt>maxSize</tt> equal where possible.
+	 */
+	public int drawMode = PConstants.POINTS;
+	
+	private final int capacity;
+	private final float[] posX;
+	private final float[] posY;
+	private final float[] velX;
+	private final float[] velY;
+	private final float[] life;
+	private final float[] lifeSpan;
+	private final float[] size;
+	private final int[] color;
+	private int count = 0;
+	
+	private float emissionAccumulator = 0;
+	private final Random random = new Random();
+	
+	
+	/**
+	 * Creates a new NestParticleSystem, with room for up to <tt>capacity</tt> live particles.
+	 * Particles emitted while at capacity are dropped.
+	 * 
+	 * @param	capacity	Maximum number of live particles.
+	 */
+	public NestParticleSystem (int capacity) {
+		super();
+		this.capacity = capacity;
+		posX = new float[capacity];
+		posY = new float[capacity];
+		velX = new float[capacity];
+		velY = new float[capacity];
+		life = new float[capacity];
+		lifeSpan = new float[capacity];
+		size = new float[capacity];
+		color = new int[capacity];
+	}
+	
+	/**
+	 * Emit <tt>n</tt> particles at once, from the origin of this NestParticleSystem.
+	 */
+	public void emit (int n) {
+		float angle, speed;
+		int i;
+		while (n-- > 0 && count < capacity) {
+			i = count++;
+			angle = emitAngle + emitSpread * (random.nextFloat() - 0.5f);
+			speed = minSpeed + (maxSpeed - minSpeed) * random.nextFloat();
+			posX[i] = 0;
+			posY[i] = 0;
+			velX[i] = speed * (float)Math.cos(angle);
+			velY[i] = speed * (float)Math.sin(angle);
+			lifeSpan[i] = life[i] = Math.max(1, minLife + (maxLife - minLife) * random.nextFloat());
+			size[i] = minSize + (maxSize - minSize) * random.nextFloat();
+			color[i] = startColor;
+		}
+	}
+	
+	/**
+	 * Remove all live particles.
+	 */
+	public void clear () {
+		count = 0;
+		emissionAccumulator = 0;
+	}
+	
+	/**
+	 * Returns the number of live particles.
+	 */
+	public int numParticles () {
+		return count;
+	}
+	
+	/**
+	 * Returns the maximum number of live particles.
+	 */
+	public int capacity () {
+		return capacity;
+	}
+	
+	/**
+	 * Emit new particles, then move and age all live particles, removing those that have expired.
+	 * Subclasses that override <tt>update()</tt> should call <tt>super.update(p)</tt>.
+	 */
+	@Override
+	protected void update (PApplet p) {
+		emissionAccumulator += emissionRate;
+		if (emissionAccumulator >= 1) {
+			int n = (int)emissionAccumulator;
+			emissionAccumulator -= n;
+			emit(n);
+		}
+		
+		float damping = 1 - drag;
+		boolean fade = startColor != endColor;
+		int last;
+		for (int i=0; i<count; i++) {
+			if (--life[i] <= 0) {
+				// expired; move the last live particle into this slot.
+				last = --count;
+				posX[i] = posX[last];
+				posY[i] = posY[last];
+				velX[i] = velX[last];
+				velY[i] = velY[last];
+				life[i] = life[last];
+				lifeSpan[i] = lifeSpan[last];
+				size[i] = size[last];
+				color[i] = color[last];
+				i--;
+				continue;
+			}
+			
+			velX[i] = (velX[i] + gravityX) * damping;
+			velY[i] = (velY[i] + gravityY) * damping;
+			posX[i] += velX[i];
+			posY[i] += velY[i];
+			if (fade) {
+				color[i] = lerpColor(endColor, startColor, life[i] / lifeSpan[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Draw all live particles in a single shape.
+	 */
+	@Override
+	protected void draw (PApplet p) {
+		int n = count;
+		if (n == 0) { return; }
+		
+		if (drawMode == PConstants.QUADS) {
+			p.noStroke();
+			p.beginShape(PConstants.QUADS);
+			float x, y, h;
+			for (int i=0; i<n; i++) {
+				x = posX[i];
+				y = posY[i];
+				h = 0.5f * size[i];
+				p.fill(color[i]);
+				p.vertex(x - h, y - h);
+				p.vertex(x + h, y - h);
+				p.vertex(x + h, y + h);
+				p.vertex(x - h, y + h);
+			}
+			p.endShape();
+		} else {
+			float weight = size[0];
+			p.strokeWeight(weight);
+			p.beginShape(PConstants.POINTS);
+			for (int i=0; i<n; i++) {
+				if (size[i] != weight) {
+					weight = size[i];
+					p.strokeWeight(weight);
+				}
+				p.stroke(color[i]);
+				p.vertex(posX[i], posY[i]);
+			}
+			p.endShape();
+		}
+	}
+	
+	/**
+	 * Interpolate each ARGB channel from <tt>c1</tt> to <tt>c2</tt>.
+	 */
+	private static int lerpColor (int c1, int c2, float amt) {
+		int a1 = c1 >>> 24, r1 = (c1 >> 16) & 0xFF, g1 = (c1 >> 8) & 0xFF, b1 = c1 & 0xFF;
+		int a2 = c2 >>> 24, r2 = (c2 >> 16) & 0xFF, g2 = (c2 >> 8) & 0xFF, b2 = c2 & 0xFF;
+		return ((int)(a1 + (a2 - a1) * amt) << 24) |
+				((int)(r1 + (r2 - r1) * amt) << 16) |
+				((int)(g1 + (g2 - g1) * amt) << 8) |
+				(int)(b1 + (b2 - b1) * amt);
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ * This file is part of Nest.
+ * Nest - http://transmote.com/nest/ is a
+ * derivative of Processing - http://processing.org/
+ * Copyright (C) 2011, Eric Socolofsky
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.transmote.nest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * <p>
+ * Attributes the time spent in <tt>update()</tt>, <tt>draw()</tt>, and event handlers
+ * to the NestSprite subclasses (and, for NestSprites with a {@link NestSprite#name}, the names)
+ * responsible.  Enabled via {@link NestSpriteContainer#setProfilingEnabled(boolean)},
+ * and accessed via {@link NestSpriteContainer#profiler()}.
+ * </p><p>
+ * e.g.:
+ * <pre>
+ * spriteContainer.setProfilingEnabled(true);
+ * spriteContainer.profiler().setFrameBudget(16);
+ * ...
+ * println(spriteContainer.profiler().report());
+ * </pre>
+ * </p><p>
+ * To keep the cost low, only one frame in every {@link #setSampleInterval(int) sample interval}
+ * is timed; times are totals over the sampled frames.  Time spent in a NestSprite's
+ * <tt>update()</tt> or <tt>draw()</tt> does not include that of its children, which are
+ * attributed separately.  If a frame budget is set, time spent in sampled frames that
+ * took longer than the budget is also totalled, to show which classes are responsible
+ * for slow frames.
+ * </p>
+ *
+ * @author		Eric Socolofsky
+ */
+public class NestProfiler {
+	/** Time spent in <tt>update()</tt>, or a setUpdate() override. */
+	public static final int UPDATE = 0;
+	/** Time spent in <tt>draw()</tt>, or a setDraw() override. */
+	public static final int DRAW = 1;
+	/** Time spent in event handlers. */
+	public static final int EVENT = 2;
+	
+	public static final int DEFAULT_SAMPLE_INTERVAL = 5;
+	
+	/**
+	 * Times for one NestSprite subclass, or one name within a subclass.
+	 */
+	public static class Entry {
+		private final NestProfiler profiler;
+		private final int generation;
+		private final Class<?> spriteClass;
+		private final String name;
+		private final long[] nanos = new long[3];
+		private final int[] calls = new int[3];
+		private long overBudgetNanos = 0;
+		private long frameNanos = 0;
+		
+		Entry (NestProfiler profiler, Class<?> spriteClass, String name) {
+			this.profiler = profiler;
+			this.generation = profiler.generation;
+			this.spriteClass = spriteClass;
+			this.name = name;
+		}
+		
+		/** The NestSprite subclass timed by this Entry. */
+		public Class<?> spriteClass () { return spriteClass; }
+		/** The {@link NestSprite#name} timed by this Entry, or <tt>null</tt> for unnamed NestSprites. */
+		public String name () { return name; }
+		/** Nanoseconds spent in sampled frames in the specified phase: {@link #UPDATE}, {@link #DRAW}, or {@link #EVENT}. */
+		public long nanos (int phase) { return nanos[phase]; }
+		/** Number of calls in sampled frames in the specified phase: {@link #UPDATE}, {@link #DRAW}, or {@link #EVENT}. */
+		public int calls (int phase) { return calls[phase]; }
+		/** Nanoseconds spent in sampled frames, in all phases. */
+		public long totalNanos () { return nanos[UPDATE] + nanos[DRAW] + nanos[EVENT]; }
+		/** Nanoseconds spent, in all phases, in sampled frames that exceeded the frame budget. */
+		public long overBudgetNanos () { return overBudgetNanos; }
+		
+		public String toString () {
+			return spriteClass.getName() + ((name != null) ? " \""+ name +"\"" : "");
+		}
+	}
+	
+	private static final Comparator<Entry> BY_TOTAL = new Comparator<Entry>() {
+		public int compare (Entry a, Entry b) {
+			long ta = a.totalNanos();
+			long tb = b.totalNanos();
+			return (ta < tb) ? 1 : ((ta > tb) ? -1 : 0);
+		}
+	};
+	
+	private final HashMap<Class<?>, Entry> classEntries = new HashMap<Class<?>, Entry>();
+	private final HashMap<Class<?>, HashMap<String, Entry>> namedEntries = new HashMap<Class<?>, HashMap<String, Entry>>();
+	private final ArrayList<Entry> entries = new ArrayList<Entry>();
+	private final ArrayList<Entry> frameEntries = new ArrayList<Entry>();
+	
+	private int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+	private long frameBudgetNanos = 0;
+	private long frameCount = 0;
+	private boolean sampling = false;
+	private int sampledFrames = 0;
+	private int overBudgetFrames = 0;
+	
+	// bumped by reset(), invalidating the Entries cached on NestSprites.
+	private int generation = 0;
+	
+	NestProfiler () {}
+	
+	/**
+	 * Time one frame in every <tt>interval</tt>.  Pass <tt>1</tt> to time every frame,
+	 * at a higher cost.  Defaults to {@link #DEFAULT_SAMPLE_INTERVAL}.
+	 * @throws	IllegalArgumentException	Thrown if <tt>interval</tt> is less than <tt>1</tt>.
+	 */
+	public void setSampleInterval (int interval) throws IllegalArgumentException {
+		if (interval < 1) {
+			throw new IllegalArgumentException("@interval must be at least 1.");
+		}
+		sampleInterval = interval;
+	}
+	
+	/**
+	 * Returns the number of frames between sampled frames.
+	 * @see		#setSampleInterval(int)
+	 */
+	public int sampleInterval () {
+		return sampleInterval;
+	}
+	
+	/**
+	 * Set the frame budget, in milliseconds: sampled frames whose
+	 * <tt>updateDisplayList()</tt> call takes longer are counted as over budget,
+	 * and the time spent in them totalled per Entry.  Pass <tt>0</tt> (the default) for no budget.
+	 */
+	public void setFrameBudget (float millis) {
+		frameBudgetNanos = (long)(Math.max(0, millis) * 1000000);
+	}
+	
+	/**
+	 * Returns the frame budget, in milliseconds.
+	 * @see		#setFrameBudget(float)
+	 */
+	public float frameBudget () {
+		return frameBudgetNanos / 1000000f;
+	}
+	
+	/**
+	 * Returns the number of frames timed since profiling was enabled, or since {@link #reset()}.
+	 */
+	public int numSampledFrames () {
+		return sampledFrames;
+	}
+	
+	/**
+	 * Returns the number of timed frames that exceeded the frame budget.
+	 * @see		#setFrameBudget(float)
+	 */
+	public int numOverBudgetFrames () {
+		return overBudgetFrames;
+	}
+	
+	/**
+	 * Returns the Entries timed so far, from the most time spent to the least.
+	 */
+	public synchronized List<Entry> entries () {
+		ArrayList<Entry> sorted = new ArrayList<Entry>(entries);
+		Collections.sort(sorted, BY_TOTAL);
+		return sorted;
+	}
+	
+	/**
+	 * Returns a table of the Entries timed so far, from the most time spent to the least,
+	 * with the mean time per sampled frame spent in each phase.
+	 */
+	public synchronized String report () {
+		StringBuilder sb = new StringBuilder();
+		sb.append("NestProfiler: ").append(sampledFrames).append(" sampled frames");
+		if (frameBudgetNanos > 0) {
+			sb.append(", ").append(overBudgetFrames).append(" over budget of ").append(frameBudget()).append("ms");
+		}
+		sb.append('\n');
+		sb.append(String.format("%10s %10s %10s %10s %12s  %s%n", "total(us)", "update(us)", "draw(us)", "event(us)", "overbudget%", "class"));
+		
+		int frames = Math.max(1, sampledFrames);
+		long overBudgetTotal = 0;
+		for (int i=0; i<entries.size(); i++) {
+			overBudgetTotal += entries.get(i).overBudgetNanos;
+		}
+		List<Entry> sorted = entries();
+		Entry e;
+		for (int i=0; i<sorted.size(); i++) {
+			e = sorted.get(i);
+			sb.append(String.format("%10.1f %10.1f %10.1f %10.1f %12.1f  %s%n",
+					e.totalNanos() / 1000.0 / frames,
+					e.nanos[UPDATE] / 1000.0 / frames,
+					e.nanos[DRAW] / 1000.0 / frames,
+					e.nanos[EVENT] / 1000.0 / frames,
+					(overBudgetTotal == 0) ? 0 : 100.0 * e.overBudgetNanos / overBudgetTotal,
+					e));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Discard all times recorded so far.
+	 */
+	public synchronized void reset () {
+		classEntries.clear();
+		namedEntries.clear();
+		entries.clear();
+		frameEntries.clear();
+		generation++;
+		sampledFrames = 0;
+		overBudgetFrames = 0;
+	}
+	
+	public String toString () {
+		return report();
+	}
+	
+	
+	//-----<PACKAGE-PRIVATE METHODS>---------------------------------//
+	/**
+	 * Start a frame.
+	 * @return	<tt>true</tt> if this frame is to be timed.
+	 */
+	boolean beginFrame () {
+		sampling = (frameCount++ % sampleInterval) == 0;
+		return sampling;
+	}
+	
+	/**
+	 * Returns <tt>true</tt> if the current frame is being timed;
+	 * events dispatched between frames are timed along with the preceding frame.
+	 */
+	boolean sampling () {
+		return sampling;
+	}
+	
+	/**
+	 * End a timed frame, noting whether it exceeded the frame budget.
+	 * @param	frameNanos	Duration of the frame's updateDisplayList() call.
+	 */
+	synchronized void endFrame (long frameNanos) {
+		if (!sampling) { return; }
+		
+		sampledFrames++;
+		boolean overBudget = frameBudgetNanos > 0 && frameNanos > frameBudgetNanos;
+		if (overBudget) {
+			overBudgetFrames++;
+		}
+		Entry e;
+		for (int i=0; i<frameEntries.size(); i++) {
+			e = frameEntries.get(i);
+			if (overBudget) {
+				e.overBudgetNanos += e.frameNanos;
+			}
+			e.frameNanos = 0;
+		}
+		frameEntries.clear();
+	}
+	
+	/**
+	 * Add time spent by <tt>sprite</tt> in the specified phase.
+	 * Synchronized, as independentUpdate subtrees may be updated concurrently.
+	 */
+	synchronized void record (NestSprite sprite, int phase, long nanos) {
+		Entry e = sprite.profileEntry;
+		if (e == null || e.profiler != this || e.generation != generation || e.spriteClass != sprite.getClass() || !sameName(e.name, sprite.name)) {
+			e = sprite.profileEntry = entry(sprite.getClass(), sprite.name);
+		}
+		e.nanos[phase] += nanos;
+		e.calls[phase]++;
+		if (e.frameNanos == 0) {
+			frameEntries.add(e);
+		}
+		e.frameNanos += Math.max(1, nanos);
+	}
+	//-----</PACKAGE-PRIVATE METHODS>--------------------------------//
+	
+	
+	private Entry entry (Class<?> spriteClass, String name) {
+		Entry e;
+		if (name == null) {
+			e = classEntries.get(spriteClass);
+			if (e == null) {
+				e = new Entry(this, spriteClass, null);
+				classEntries.put(spriteClass, e);
+				entries.add(e);
+			}
+			return e;
+		}
+		
+		HashMap<String, Entry> byName = namedEntries.get(spriteClass);
+		if (byName == null) {
+			byName = new HashMap<String, Entry>();
+			namedEntries.put(spriteClass, byName);
+		}
+		e = byName.get(name);
+		if (e == null) {
+			e = new Entry(this, spriteClass, name);
+			byName.put(name, e);
+			entries.add(e);
+		}
+		return e;
+	}
+	
+	private static boolean sameName (String a, String b) {
+		return (a == b) || (a != null && a.equals(b));
+	}
+}
@@ -29,10 +29,20 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.ListIterator;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import processing.core.PApplet;
 import processing.core.PGraphics;
@@ -317,9 +327,11 @@ public class NestSprite extends EventDispatcher {
 	 * </p>
 	 * <p>
 	 * Note that due to the implementation used in Nest,
-	 * which entails running a hitTest() on all descendants of this NestSprite instance,
+	 * which entails running a hitTest() on the descendants of this NestSprite instance,
 	 * setting to <tt>true</tt> may result in decreased performance.
-	 * The implementation can probably use some optimization.
+	 * Branches whose aggregate bounds do not contain the mouse are skipped,
+	 * and enabling {@link NestSpriteContainer#setSpatialIndexEnabled(boolean)}
+	 * avoids the descendant hitTest() entirely.
 	 * </p>
 	 * <p> 
 	 * Defaults to <tt>false</tt>.
@@ -327,23 +339,141 @@ public class NestSprite extends EventDispatcher {
 	 */
 	public boolean handleCaptureEvents = false;
 	
+	/**
+	 * <p>
+	 * If <tt>true</tt>, this NestSprite instance and its descendants are drawn once into
+	 * an offscreen buffer, which is then drawn to screen every frame with a single <tt>image()</tt> call,
+	 * as with ActionScript's <tt>cacheAsBitmap</tt>.  Useful for complex content that rarely changes.
+	 * </p><p>
+	 * The buffer is redrawn only when a descendant's transform, bounds rect, <tt>visible</tt>,
+	 * or <tt>blendMode</tt> changes, or when children are added, removed, or reordered.
+	 * Changes to this NestSprite's own transform do not require a redraw.
+	 * Nest cannot detect other changes to what <tt>draw()</tt> draws
+	 * (e.g. a change of fill color); call {@link #invalidateBitmapCache()} when they occur.
+	 * </p><p>
+	 * The buffer is sized to fit the bounds rects of this NestSprite and its descendants,
+	 * and anything drawn outside of them is clipped; if no bounds rects are set,
+	 * <tt>cacheAsBitmap</tt> has no effect.  The buffer is drawn at the resolution of
+	 * this NestSprite's coordinate space, so scaling it up may look pixelated.
+	 * Ignored when using a 3D renderer.
+	 * </p><p>
+	 * Defaults to <tt>false</tt>.
+	 * </p>
+	 */
+	public boolean cacheAsBitmap = false;
+	
+	/**
+	 * <p>
+	 * If <tt>true</tt>, and {@link NestSpriteContainer#setParallelUpdateEnabled(boolean)} is on,
+	 * the <tt>update()</tt> calls and transform calculations of this NestSprite and its descendants
+	 * run on a worker thread, concurrently with those of other independent subtrees
+	 * and of this NestSprite's siblings.  All updates complete before any NestSprite is drawn.
+	 * </p><p>
+	 * Mark a subtree as independent only if its <tt>update()</tt> methods (and setUpdate() overrides)
+	 * read and write nothing outside of the subtree, other than thread-safe state:
+	 * in particular, they must not add, remove, or reorder NestSprites outside of the subtree
+	 * (including removing the independent NestSprite itself from its parent),
+	 * dispatch events to listeners outside of the subtree, or call PApplet drawing methods.
+	 * The order in which independent subtrees are updated, relative to each other
+	 * and to their siblings, is not defined.
+	 * </p><p>
+	 * Defaults to <tt>false</tt>.
+	 * </p>
+	 */
+	public boolean independentUpdate = false;
+	
+	/**
+	 * <p>
+	 * Number of update passes (usually, frames) between calls to <tt>update()</tt>
+	 * on this NestSprite; e.g. <tt>3</tt> calls <tt>update()</tt> every third frame.
+	 * Descendants are unaffected, and are still updated according to their own settings.
+	 * </p><p>
+	 * Defaults to <tt>1</tt> (every frame).
+	 * </p>
+	 * @see		#updateIntervalMillis
+	 */
+	public int updateInterval = 1;
+	
+	/**
+	 * <p>
+	 * Minimum number of milliseconds between calls to <tt>update()</tt> on this NestSprite.
+	 * <tt>update()</tt> is called on the first frame on which at least this long has passed
+	 * since the last call; use {@link NestSpriteContainer#setUpdateRate(float)} instead
+	 * for precise timing.  If {@link #updateInterval} is also set, both must have elapsed.
+	 * </p><p>
+	 * Defaults to <tt>0</tt> (no minimum).
+	 * </p>
+	 */
+	public float updateIntervalMillis = 0;
+	
+	/**
+	 * <p>
+	 * When a NestSpriteContainer's update budget ({@link NestSpriteContainer#setUpdateBudget(float)})
+	 * is spent partway through a frame, <tt>update()</tt> calls on NestSprites with a negative
+	 * <tt>updatePriority</tt> are deferred to a later frame.  A NestSprite with an
+	 * <tt>updatePriority</tt> of <tt>-n</tt> is deferred for at most <tt>n</tt> frames in a row;
+	 * e.g. background decoration might use <tt>-10</tt>.
+	 * </p><p>
+	 * Defaults to <tt>0</tt> (never deferred).
+	 * </p>
+	 */
+	public int updatePriority = 0;
+	
+	/**
+	 * <p>
+	 * Optional name of this NestSprite instance.  NestSprites with a name are timed
+	 * separately from unnamed NestSprites of the same class by the {@link NestProfiler}.
+	 * </p><p>
+	 * Defaults to <tt>null</tt>.
+	 * </p>
+	 */
+	public String name = null;
+	
 	protected PGraphics g;
 	
 	NestSprite parent;
 	ArrayList<NestSprite> childList;
+	// index of this NestSprite in its parent's childList, plus the parent's childIndexBase,
+	// which is shifted rather than renumbering every child when the front of the child list changes.
+	int childIndex = -1;
+	private int childIndexBase = 0;
+	// while changes to the display list are deferred (see NestSpriteContainer.deferMutation()),
+	// this NestSprite's child list and parent as they will be once the changes are applied,
+	// for child list queries and argument validation; null and unset when unaffected by pending changes.
+	ArrayList<NestSprite> pendingChildList = null;
+	NestSprite pendingParent = null;
+	boolean parentPending = false;
 	PApplet p;
 	float screenX;
 	float screenY;
 	float mouseX;
 	float mouseY;
+	AffineTransform worldMatrix;
+	int worldVersion = 0;
+	SpatialIndex spatialIndex = null;
+	SpatialIndex.Entry spatialEntry = null;
+	int routeStamp = 0;
+	
+	// NestProfiler.Entry this NestSprite's times were last recorded into.
+	NestProfiler.Entry profileEntry = null;
 	
 	private static final int PROCESSING_DEFAULT_BLEND_MODE = PApplet.BLEND;
-	private static int currentBlendMode = NO_BLEND_MODE;
+	private static final AffineTransform IDENTITY_MATRIX = new AffineTransform();
+	
+	// bumped whenever the mouse location, or any NestSprite's local transform, changes;
+	// mouse coords of a NestSprite validated since the last bump are current.
+	// atomic, as independentUpdate subtrees may be prerendered concurrently.
+	static final AtomicInteger mouseEpoch = new AtomicInteger();
+	
+	// whether each NestSprite subclass overrides update(PApplet).
+	private static final HashMap<Class<?>, Boolean> updateOverrides = new HashMap<Class<?>, Boolean>();
 	
-	private AffineTransform transform;
-	private Point2D.Float localPt;
-	private Point2D.Float screenPt;
+	private AffineTransform localMatrix;
+	private AffineTransform worldInverse;
+	private AffineTransform renderMatrix;
+	private Point2D.Float parentMousePt;
 	private Point2D.Float mousePt;
+	private Point2D.Float hitTestPt;
 	private Rectangle2D.Float bounds = new Rectangle2D.Float();
 	
 	private boolean rendererIs3D = false;
@@ -352,10 +482,77 @@ public class NestSprite extends EventDispatcher {
 	private boolean isDisposed = false;
 	private int previousBlendMode = NO_BLEND_MODE;
 	
-	private Method updateOverride = null;
-	private Object updateOverrideTarget = null;
-	private Method drawOverride = null;
-	private Object drawOverrideTarget = null;
+	// transform cache.  x/y/scale/rotation are public fields and cannot notify on write,
+	// so the values used to build localMatrix are cached and compared each validation.
+	// worldVersion is bumped whenever worldMatrix changes; descendants compare it against
+	// the version they last composed with, which pushes invalidation down the display list
+	// without visiting clean subtrees' matrices.
+	private boolean transformDirty = true;
+	private float cachedX;
+	private float cachedY;
+	private float cachedScaleX;
+	private float cachedScaleY;
+	private float cachedRotationZ;
+	private int localVersion = 0;
+	private int parentWorldVersion = -1;
+	private int worldInverseVersion = -1;
+	private int mouseLocalVersion = -1;
+	
+	// aggregated bounds of this NestSprite and all descendants, in local space.
+	// invalidated up the display list when a descendant's bounds, transform,
+	// or child list changes; recomputed lazily when next queried.
+	// an empty subtree has min > max.
+	private boolean subtreeBoundsDirty = true;
+	private float subtreeMinX;
+	private float subtreeMinY;
+	private float subtreeMaxX;
+	private float subtreeMaxY;
+	private float cachedBoundsLeft;
+	private float cachedBoundsTop;
+	private float cachedWidth;
+	private float cachedHeight;
+	private boolean cachedVisible = true;
+	private int cachedBlendMode = NO_BLEND_MODE;
+	
+	// set when a child's z changes, or children are added or rearranged;
+	// cleared when the child list is next sorted by z.
+	private float cachedZ = 0.0f;
+	private boolean zOrderDirty = false;
+	
+	// active-set scheduling: whether update() need be called each frame,
+	// as set via setActive(), or null to detect from overrides of update().
+	private boolean overridesUpdate = false;
+	private Boolean explicitActive = null;
+	int activeSlot = -1;
+	int prerenderStamp = 0;
+	
+	// true from when this NestSprite is released to a NestSpritePool until it is next acquired.
+	boolean pooled = false;
+	private int mouseValidEpoch = -1;
+	
+	// update pass and time of the last call to update(), and number of update() calls since deferred.
+	private int lastUpdateFrame = Integer.MIN_VALUE / 2;
+	private long lastUpdateNanos = Long.MIN_VALUE / 2;
+	private int updatesDeferred = 0;
+	
+	// transform before the update step numbered prevStep, for render interpolation.
+	private float prevX, prevY, prevScaleX, prevScaleY, prevRotationZ;
+	private int prevStep = 0;
+	
+	// task that runs prerender() on this NestSprite, when it is an independentUpdate subtree,
+	// and the children forked from this NestSprite's prerender() that have yet to be joined.
+	// prerenderForked is set while this NestSprite's subtree is prerendered by its task.
+	private PrerenderTask prerenderTask = null;
+	private boolean prerenderForked = false;
+	private ArrayList<NestSprite> forkedChildren = null;
+	
+	private PGraphics bitmapCache = null;
+	private boolean bitmapCacheValid = false;
+	private float bitmapCacheX;
+	private float bitmapCacheY;
+	
+	private UpdateBehavior updateOverride = null;
+	private DrawBehavior drawOverride = null;
 
 	
 	//-----<CONSTRUCTORS>--------------------------------------------//
@@ -407,6 +604,10 @@ public class NestSprite extends EventDispatcher {
 	/**
 	 * Adds a NestSprite as a child to this NestSprite instance.
 	 * The child is added to the front (top) of all other children of this NestSprite instance.
+	 * As with all changes to the child list made during <tt>update()</tt>, <tt>draw()</tt>,
+	 * or event handling, the child is added once the current pass over the display list completes;
+	 * until then, it is not updated or drawn by the pass, but {@link #numChildren()}, {@link #getChildAt(int)},
+	 * {@link #getChildIndex(NestSprite)}, and {@link #parent()} already reflect the addition.
 	 * @param	sprite	The NestSprite instance to add as a child.
 	 * @example			AddChild
 	 */
@@ -417,6 +618,8 @@ public class NestSprite extends EventDispatcher {
 	/**
 	 * Adds a NestSprite as a child to this NestSprite instance.
 	 * The child is added at the index specified.
+	 * During a pass over the display list, the child is added once the pass completes,
+	 * as with {@link #addChild(NestSprite)}.
 	 * @param	index	The index in the child list at which the child is added.
 	 * @param	sprite	The NestSprite instance to add as a child.
 	 * @example			AddChild
@@ -426,125 +629,320 @@ public class NestSprite extends EventDispatcher {
 			// NestSprite cannot be a child of itself.
 			return;
 		}
-		
-		if (sprite.parent != null && sprite.parent != this) {
-			// if sprite already belongs to another child list, remove it from that parent
-			sprite.parent.removeChild(sprite);
-		}
-		
-		if (!childList.contains(sprite)) {
-			childList.add(Math.min(index, childList.size()), sprite);
+		if (deferMutation(NestSpriteContainer.ADD_CHILD, sprite, null, index, null)) { return; }
+		applyAddChild(index, sprite);
+	}
+	
+	/**
+	 * Adds multiple NestSprites as children to this NestSprite instance,
+	 * in front of all other children, in iteration order.
+	 * Equivalent to calling {@link #addChild(NestSprite)} for each,
+	 * but invalidates bounds and bitmap caches only once.
+	 * During a pass over the display list, the children are added once the pass completes,
+	 * as with <tt>addChild()</tt>.
+	 * @param	sprites	The NestSprite instances to add as children.
+	 */
+	public void addChildren (Collection<? extends NestSprite> sprites) {
+		NestSpriteContainer root = rootContainer();
+		if (root != null && root.traversing() &&
+				deferMutation(NestSpriteContainer.ADD_CHILDREN, null, null, 0, sprites.toArray(new NestSprite[sprites.size()]))) {
+			return;
 		}
-		
-		sprite.onAdded(this);
+		applyAddChildren(sprites);
 	}
 	
 	/**
 	 * Removes the specified NestSprite from the child list of this NestSprite instance.
+	 * As with all changes to the child list made during <tt>update()</tt>, <tt>draw()</tt>,
+	 * or event handling, the removal takes effect once the current pass over the display list completes;
+	 * until then, the child is still updated and drawn by the pass, but {@link #numChildren()}, {@link #getChildAt(int)},
+	 * {@link #getChildIndex(NestSprite)}, and {@link #parent()} already reflect the removal.
+	 * <p>
+	 * Membership and index are looked up directly, but the children behind the removed child
+	 * are still shifted down the child list, so removing many children one at a time
+	 * from the front or middle of a long child list takes time proportional to the square of their number.
+	 * To remove many children, use {@link #removeChildren(int, int)} or {@link #removeChildren()},
+	 * which take time proportional to the length of the child list, or remove from the back (highest index) first.
+	 * </p>
 	 * @param	sprite	The NestSprite instance to remove.
 	 * @return			The removed NestSprite instance.
 	 */
 	public NestSprite removeChild (NestSprite sprite) {
-		childList.remove(sprite);
-		sprite.onRemoved();
+		if (deferMutation(NestSpriteContainer.REMOVE_CHILD, sprite, null, 0, null)) { return sprite; }
+		applyRemoveChild(sprite);
 		return sprite;
 	}
 	
 	/**
 	 * Removes the NestSprite at the specified index from the child list of this NestSprite instance.
+	 * As with {@link #removeChild(NestSprite)}, the children behind it are shifted down the child list;
+	 * e.g. emptying a child list by repeatedly removing index <tt>0</tt> is quadratic,
+	 * where {@link #removeChildren()} is linear.
+	 * During a pass over the display list, <tt>index</tt> refers to the child list
+	 * including changes made earlier in the pass, and the removal takes effect once the pass completes.
 	 * @param	index	The index in the child list of this NestSprite instance of the child to remove.
 	 * @return			The removed NestSprite instance.
 	 */
 	public NestSprite removeChild (int index) {
-		if (index >= childList.size()) {
-			throw new IndexOutOfBoundsException("Index "+ index +" is out of range "+ childList.size() +" for NestSprite child list.");
+		ArrayList<NestSprite> children = children();
+		if (index >= children.size()) {
+			throw new IndexOutOfBoundsException("Index "+ index +" is out of range "+ children.size() +" for NestSprite child list.");
+		}
+		NestSprite removed = children.get(index);
+		if (deferMutation(NestSpriteContainer.REMOVE_CHILD_AT, removed, null, 0, null)) { return removed; }
+		
+		NestSpriteContainer container = activeSetContainer();
+		if (container != null) {
+			container.unregisterActiveSprites(childList.get(index));
+		}
+		
+		NestSprite sprite = childList.remove(index);
+		childrenRemoved(index, 1);
+		invalidateSubtreeBounds();
+		invalidateBitmapCaches(this);
+		sprite.detachSpatialIndex();
+		sprite.onRemoved();
+		return sprite;
+	}
+	
+	/**
+	 * Removes the children from index <tt>fromIndex</tt>, inclusive, to <tt>toIndex</tt>, exclusive,
+	 * from the child list of this NestSprite instance.
+	 * Equivalent to calling {@link #removeChild(NestSprite)} for each,
+	 * but shifts the remaining children only once, so removing any number of children
+	 * takes time proportional to the length of the child list.
+	 * During a pass over the display list, the indices refer to the child list
+	 * including changes made earlier in the pass, and the removal takes effect once the pass completes.
+	 * @param	fromIndex	The index of the first child to remove.
+	 * @param	toIndex		The index after the last child to remove.
+	 * @throws	IndexOutOfBoundsException	Thrown if the specified range does not lie within the child list.
+	 */
+	public void removeChildren (int fromIndex, int toIndex) throws IndexOutOfBoundsException {
+		ArrayList<NestSprite> children = children();
+		if (fromIndex < 0 || toIndex > children.size() || fromIndex > toIndex) {
+			throw new IndexOutOfBoundsException("Range "+ fromIndex +" to "+ toIndex +" is out of range "+ children.size() +" for NestSprite child list.");
 		}
+		if (fromIndex == toIndex) { return; }
+		
+		List<NestSprite> range = children.subList(fromIndex, toIndex);
+		NestSprite[] removed = range.toArray(new NestSprite[range.size()]);
+		if (deferMutation(NestSpriteContainer.REMOVE_CHILDREN, null, null, 0, removed)) { return; }
+		range = childList.subList(fromIndex, toIndex);
 		
-		return childList.remove(index);
+		NestSpriteContainer container = activeSetContainer();
+		if (container != null) {
+			for (int i=0; i<removed.length; i++) {
+				container.unregisterActiveSprites(removed[i]);
+			}
+		}
+		range.clear();
+		childrenRemoved(fromIndex, removed.length);
+		invalidateSubtreeBounds();
+		invalidateBitmapCaches(this);
+		
+		for (int i=0; i<removed.length; i++) {
+			removed[i].detachSpatialIndex();
+			removed[i].onRemoved();
+		}
+	}
+	
+	/**
+	 * Removes all children from the child list of this NestSprite instance,
+	 * in time proportional to their number.
+	 * During a pass over the display list, this includes children added earlier in the pass,
+	 * and the removal takes effect once the pass completes.
+	 */
+	public void removeChildren () {
+		removeChildren(0, children().size());
 	}
 	
 	/**
 	 * Returns the NestSprite at the specified index in the child list of this NestSprite instance.
+	 * During a pass over the display list, reflects changes made to the child list earlier in the pass,
+	 * though they are not applied until the pass completes.
 	 * @param	index	The index in the child list of this NestSprite instance of the child to return.
 	 */
 	public NestSprite getChildAt (int index) {
-		if (index >= childList.size()) {
-			throw new IndexOutOfBoundsException("Index "+ index +" is out of range "+ childList.size() +" for NestSprite child list.");
+		ArrayList<NestSprite> children = children();
+		if (index >= children.size()) {
+			throw new IndexOutOfBoundsException("Index "+ index +" is out of range "+ children.size() +" for NestSprite child list.");
 		}
 		
-		return childList.get(index);
+		return children.get(index);
 	}
 	
 	/**
 	 * Return the index of the specified NestSprite in the child list of this NestSprite instance. 
+	 * During a pass over the display list, reflects changes made to the child list earlier in the pass,
+	 * though they are not applied until the pass completes; while any are pending,
+	 * the index is found by a search of the child list.
 	 * @param		sprite	The NestSprite instance whose index will be returned.
 	 * @return		index	The index of the specified NestSprite instance.
 	 */
 	public int getChildIndex (NestSprite sprite) {
-		if (!childList.contains(sprite)) {
-			return -1;
+		ArrayList<NestSprite> pending = pendingChildList;
+		if (pending != null) {
+			return isChild(sprite) ? pending.indexOf(sprite) : -1;
 		}
-		return childList.indexOf(sprite);
+		return hasChild(sprite) ? sprite.childIndex - childIndexBase : -1;
 	}
 	
 	/**
 	 * Move a child of this NestSprite instance to a specified index in the child list.
+	 * During a pass over the display list, <tt>sprite</tt> and <tt>index</tt> are checked against
+	 * the child list including changes made earlier in the pass, and the move takes effect once the pass completes.
 	 * @param	index	The index to which to move the specified NestSprite instance.
 	 * @param 	sprite	The NestSprite child to move.
 	 * @throws	IndexOutOfBoundsException	Thrown if the specified index position does not exist in the child list.
 	 * @throws	IllegalArgumentException	Thrown if the specified NestSprite is not a child of this NestSprite instance.
 	 */
 	public void setChildIndex (int index, NestSprite sprite) throws IndexOutOfBoundsException, IllegalArgumentException {
-		if (!childList.contains(sprite)) {
+		if (!isChild(sprite)) {
 			throw new IllegalArgumentException("Passed NestSprite must be a child of this NestSprite.");
 		}
-		if (index >= childList.size()) {
-			throw new IndexOutOfBoundsException("Index "+ index +" is out of range "+ childList.size() +" for NestSprite child list.");
+		int numChildren = children().size();
+		if (index >= numChildren) {
+			throw new IndexOutOfBoundsException("Index "+ index +" is out of range "+ numChildren +" for NestSprite child list.");
 		}
-		
-		childList.remove(sprite);
-		childList.add(index, sprite);
+		if (deferMutation(NestSpriteContainer.SET_CHILD_INDEX, sprite, null, index, null)) { return; }
+		applySetChildIndex(index, sprite);
 	}
 	
 	/**
 	 * Swap the index positions of two child NestSprites, given the two children.
+	 * During a pass over the display list, the children are checked against the child list
+	 * including changes made earlier in the pass, and the swap takes effect once the pass completes.
 	 * @param	sprite1		One child to swap.
 	 * @param	sprite2		The other child to swap.
 	 * @throws	IllegalArgumentException	Thrown if either specified NestSprite is not a child of this NestSprite instance.
 	 */
 	public void swapChildren (NestSprite sprite1, NestSprite sprite2) throws IllegalArgumentException {
-		if (!childList.contains(sprite1)) {
+		if (!isChild(sprite1)) {
 			throw new IllegalArgumentException("@sprite1 must be a child of this NestSprite.");
 		}
-		if (!childList.contains(sprite2)) {
+		if (!isChild(sprite2)) {
 			throw new IllegalArgumentException("@sprite2 must be a child of this NestSprite.");
 		}
-		
-		Collections.swap(childList, childList.indexOf(sprite1), childList.indexOf(sprite2));
+		if (deferMutation(NestSpriteContainer.SWAP_CHILDREN, sprite1, sprite2, 0, null)) { return; }
+		applySwapChildren(sprite1, sprite2);
 	}
 	
 	/**
 	 * Swap the index positions of two child NestSprites, given the indices of the two children in the child list.
+	 * During a pass over the display list, the indices refer to the child list including changes
+	 * made earlier in the pass, and the swap takes effect once the pass completes.
 	 * @param	index1		The index of one child to swap.
 	 * @param	index2		The index of the other child to swap.
 	 * @throws	IllegalArgumentException	Thrown if either specified index position does not exist in the child list.
 	 */
 	public void swapChildren (int index1, int index2) throws IndexOutOfBoundsException {
-		if (index1 >= childList.size() || index1 < 0) {
-			throw new IndexOutOfBoundsException("Index "+ index1 +" is out of range "+ childList.size() +" for NestSprite child list.");
+		ArrayList<NestSprite> children = children();
+		if (index1 >= children.size() || index1 < 0) {
+			throw new IndexOutOfBoundsException("Index "+ index1 +" is out of range "+ children.size() +" for NestSprite child list.");
 		}
-		if (index2 >= childList.size() || index2 < 0) {
-			throw new IndexOutOfBoundsException("Index "+ index2 +" is out of range "+ childList.size() +" for NestSprite child list.");
+		if (index2 >= children.size() || index2 < 0) {
+			throw new IndexOutOfBoundsException("Index "+ index2 +" is out of range "+ children.size() +" for NestSprite child list.");
 		}
+		if (deferMutation(NestSpriteContainer.SWAP_CHILDREN, children.get(index1), children.get(index2), 0, null)) { return; }
 		
-		Collections.swap(childList, index1, index2);
+		swapChildrenAt(index1, index2);
+		invalidateBitmapCaches(this);
+		zOrderDirty = true;
 	}
 	
 	/**
 	 * Returns the number of children in the child list of this NestSprite instance.
+	 * During a pass over the display list, includes changes made to the child list earlier in the pass,
+	 * though they are not applied until the pass completes.
 	 */
 	public int numChildren () {
-		return childList.size();
+		return children().size();
+	}
+	
+	/**
+	 * If the display list of this NestSprite is being traversed (during update(), draw(),
+	 * or event handling), queue a change to this NestSprite's child list,
+	 * to be applied once the traversal completes; see {@link NestSpriteContainer#deferMutation}.
+	 * 
+	 * @return	<tt>true</tt> if the change was queued;
+	 * 			<tt>false</tt> if it should be made immediately.
+	 */
+	private boolean deferMutation (int op, NestSprite sprite, NestSprite sprite2, int index, NestSprite[] sprites) {
+		NestSpriteContainer container = rootContainer();
+		return container != null && container.deferMutation(op, this, sprite, sprite2, index, sprites);
+	}
+	
+	/**
+	 * Returns the child list of this NestSprite instance as it will be once any deferred changes are applied.
+	 */
+	private ArrayList<NestSprite> children () {
+		ArrayList<NestSprite> pending = pendingChildList;
+		return (pending != null) ? pending : childList;
+	}
+	
+	/**
+	 * Returns true if <tt>sprite</tt> will be in the child list of this NestSprite instance
+	 * once any deferred changes are applied.  A NestSprite unaffected by the pending changes
+	 * is a child if it is in the child list now.
+	 */
+	private boolean isChild (NestSprite sprite) {
+		return sprite.parentPending ? sprite.pendingParent == this : hasChild(sprite);
+	}
+	
+	/**
+	 * Returns true if <tt>sprite</tt> is in the child list of this NestSprite instance,
+	 * via the index of <tt>sprite</tt> in its parent's child list, rather than a search.
+	 * The index of a NestSprite that is not in this child list either falls outside of it,
+	 * or refers to another NestSprite.
+	 */
+	boolean hasChild (NestSprite sprite) {
+		int index = sprite.childIndex - childIndexBase;
+		return index >= 0 && index < childList.size() && childList.get(index) == sprite;
+	}
+	
+	/**
+	 * Update child indices after <tt>count</tt> children have been inserted at <tt>index</tt>.
+	 * Either the children after the insertion are renumbered, or, if there are fewer before it,
+	 * childIndexBase is lowered to account for the shift, and the children before it are renumbered;
+	 * adding to either end of the child list renumbers only the added children.
+	 */
+	private void childrenInserted (int index, int count) {
+		if (index < childList.size() - (index + count)) {
+			childIndexBase -= count;
+			reindexChildren(0, index + count);
+		} else {
+			reindexChildren(index, childList.size());
+		}
+	}
+	
+	/**
+	 * Update child indices after <tt>count</tt> children have been removed from <tt>index</tt>,
+	 * renumbering whichever of the children before or after the removal are fewer.
+	 */
+	private void childrenRemoved (int index, int count) {
+		if (childList.isEmpty()) {
+			childIndexBase = 0;
+		} else if (index < childList.size() - index) {
+			childIndexBase += count;
+			reindexChildren(0, index);
+		} else {
+			reindexChildren(index, childList.size());
+		}
+	}
+	
+	private void reindexChildren (int fromIndex, int toIndex) {
+		for (int i=fromIndex; i<toIndex; i++) {
+			childList.get(i).childIndex = i + childIndexBase;
+		}
+	}
+	
+	private void swapChildrenAt (int index1, int index2) {
+		NestSprite sprite1 = childList.get(index1);
+		NestSprite sprite2 = childList.get(index2);
+		childList.set(index1, sprite2);
+		childList.set(index2, sprite1);
+		sprite2.childIndex = index1 + childIndexBase;
+		sprite1.childIndex = index2 + childIndexBase;
 	}
 	//-----</DISPLAY LIST>-------------------------------------------//
 	
@@ -653,9 +1051,11 @@ public class NestSprite extends EventDispatcher {
 	/**
 	 * The NestSprite that contains this NestSprite instance.
 	 * The parent is the NestSprite immediately above (behind) this NestSprite instance in the display list.
+	 * During a pass over the display list, reflects additions and removals made earlier in the pass,
+	 * though they are not applied until the pass completes.
 	 */
 	public NestSprite parent () {
-		return parent;
+		return parentPending ? pendingParent : parent;
 	}
 	
 	/**
@@ -670,6 +1070,7 @@ public class NestSprite extends EventDispatcher {
 	 * Returns the x coordinate of the mouse relative to the coordinate system of this NestSprite instance.
 	 */
 	public float mouseX () {
+		validateMouse();
 		return mouseX;
 	}
 	
@@ -677,6 +1078,7 @@ public class NestSprite extends EventDispatcher {
 	 * Returns the y coordinate of the mouse relative to the coordinate system of this NestSprite instance.
 	 */
 	public float mouseY () {
+		validateMouse();
 		return mouseY;
 	}
 	
@@ -684,7 +1086,21 @@ public class NestSprite extends EventDispatcher {
 	 * Returns the x and y coordinates of the mouse relative to the coordinate system of this NestSprite instance.
 	 */
 	public Point2D.Float mousePt () {
-		return new Point2D.Float(mouseX, mouseY);
+		return mousePt(new Point2D.Float());
+	}
+	
+	/**
+	 * Stores the x and y coordinates of the mouse relative to the coordinate system
+	 * of this NestSprite instance into <tt>pt</tt>, and returns <tt>pt</tt>.
+	 * Use this variant in per-frame code to avoid allocating a new Point each call.
+	 * 
+	 * @param	pt		The Point to store the coordinates into.
+	 */
+	public Point2D.Float mousePt (Point2D.Float pt) {
+		validateMouse();
+		pt.x = mouseX;
+		pt.y = mouseY;
+		return pt;
 	}
 	
 	/**
@@ -705,7 +1121,20 @@ public class NestSprite extends EventDispatcher {
 	 * Returns the x and y coordinates of this NestSprite instance relative to the coordinate system of the application.
 	 */
 	public Point2D.Float screenPt () {
-		return new Point2D.Float(screenX, screenY);
+		return screenPt(new Point2D.Float());
+	}
+	
+	/**
+	 * Stores the x and y coordinates of this NestSprite instance relative to the coordinate system
+	 * of the application into <tt>pt</tt>, and returns <tt>pt</tt>.
+	 * Use this variant in per-frame code to avoid allocating a new Point each call.
+	 * 
+	 * @param	pt		The Point to store the coordinates into.
+	 */
+	public Point2D.Float screenPt (Point2D.Float pt) {
+		pt.x = screenX;
+		pt.y = screenY;
+		return pt;
 	}
 	
 	/**
@@ -747,18 +1176,89 @@ public class NestSprite extends EventDispatcher {
 	 */
 	public void setUpdate (Object caller, String methodName) {
 		if (methodName == null) {
-			updateOverride = null;
+			setUpdate((UpdateBehavior)null);
 			return;
 		}
 		
-		Class<?> C = caller.getClass();
-		try {
-			updateOverride = C.getMethod(methodName, new Class[] { PApplet.class, NestSprite.class });
-			updateOverrideTarget = caller;
-		} catch (NoSuchMethodException e) {
-			System.err.println("No public method "+ methodName +"() found in class "+ C.getName() +".  This NestSprite instance will retain its default update() method.");
-		} catch (Exception e) {
-			e.printStackTrace();
+		UpdateBehavior behavior = BoundBehavior.bind(caller, methodName, UpdateBehavior.class, "update");
+		if (behavior != null) {
+			setUpdate(behavior);
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Specify behavior to be performed during this instance's update() phase,
+	 * in place of <tt>update()</tt>.  Unlike {@link #setUpdate(Object, String)},
+	 * the behavior is called directly, rather than looked up by name.
+	 * </p>
+	 * 
+	 * e.g.:
+	 * <pre>
+	 * lazySprite.setUpdate(new UpdateBehavior() {
+	 *     public void update (PApplet p, NestSprite sprite) {
+	 *         // update() implementation here
+	 *     }
+	 * });
+	 * </pre>
+	 * 
+	 * Pass <tt>null</tt> to remove the custom update() behavior.
+	 * 
+	 * @param	behavior	The new update() behavior for this NestSprite instance.
+	 */
+	public void setUpdate (UpdateBehavior behavior) {
+		updateOverride = behavior;
+		activeChanged();
+	}
+	
+	/**
+	 * <p>
+	 * Returns <tt>true</tt> if <tt>update()</tt> is called on this NestSprite each frame.
+	 * </p><p>
+	 * Unless set via {@link #setActive(boolean)}, a NestSprite is active if its class overrides
+	 * <tt>update()</tt>, or if an update() override has been set via <tt>setUpdate()</tt>;
+	 * <tt>update()</tt> is not called on other NestSprites, as it does nothing.
+	 * </p>
+	 */
+	public boolean isActive () {
+		if (explicitActive != null) {
+			return explicitActive.booleanValue();
+		}
+		return overridesUpdate || updateOverride != null;
+	}
+	
+	/**
+	 * <p>
+	 * Specify whether <tt>update()</tt> is called on this NestSprite each frame,
+	 * overriding detection of an overridden <tt>update()</tt> method.
+	 * Deactivating a NestSprite that does not need updating every frame saves the cost
+	 * of visiting it, particularly with {@link NestSpriteContainer#setActiveSetEnabled(boolean)}.
+	 * </p>
+	 * 
+	 * @param	active		<tt>true</tt> to call <tt>update()</tt> each frame;
+	 * 						<tt>false</tt> to not call it.
+	 * @see		#isActive()
+	 */
+	public void setActive (boolean active) {
+		explicitActive = Boolean.valueOf(active);
+		activeChanged();
+	}
+	
+	/**
+	 * <p>
+	 * When {@link NestSpriteContainer#setActiveSetEnabled(boolean)} is on, only active NestSprites
+	 * and their descendants are visited each frame.  Call <tt>invalidate()</tt> after changing
+	 * the transform, bounds rect, <tt>z</tt>, <tt>visible</tt>, or <tt>blendMode</tt>
+	 * of any other NestSprite (e.g. from an event handler, or from the <tt>update()</tt>
+	 * of an unrelated NestSprite), so that the change is picked up on the next frame.
+	 * </p><p>
+	 * Has no effect otherwise.
+	 * </p>
+	 */
+	public void invalidate () {
+		NestSpriteContainer container = activeSetContainer();
+		if (container != null) {
+			container.queuePrerender(this);
 		}
 	}
 
@@ -801,21 +1301,40 @@ public class NestSprite extends EventDispatcher {
 	 */
 	public void setDraw (Object caller, String methodName) {
 		if (methodName == null) {
-			drawOverride = null;
+			setDraw((DrawBehavior)null);
 			return;
 		}
 		
-		Class<?> C = caller.getClass();
-		try {
-			drawOverride = C.getMethod(methodName, new Class[] { PApplet.class, NestSprite.class });
-			drawOverrideTarget = caller;
-		} catch (NoSuchMethodException e) {
-			System.err.println("No public method "+ methodName +"() found in class "+ C.getName() +".  This NestSprite instance will retain its default draw() method.");
-		} catch (Exception e) {
-			e.printStackTrace();
+		DrawBehavior behavior = BoundBehavior.bind(caller, methodName, DrawBehavior.class, "draw");
+		if (behavior != null) {
+			setDraw(behavior);
 		}
 	}
 	
+	/**
+	 * <p>
+	 * Specify behavior to be performed during this instance's draw() phase,
+	 * in place of <tt>draw()</tt>.  Unlike {@link #setDraw(Object, String)},
+	 * the behavior is called directly, rather than looked up by name.
+	 * </p>
+	 * 
+	 * e.g.:
+	 * <pre>
+	 * lazySprite.setDraw(new DrawBehavior() {
+	 *     public void draw (PApplet p, NestSprite sprite) {
+	 *         // draw() implementation here
+	 *     }
+	 * });
+	 * </pre>
+	 * 
+	 * Pass <tt>null</tt> to remove the custom draw() behavior.
+	 * 
+	 * @param	behavior	The new draw() behavior for this NestSprite instance.
+	 */
+	public void setDraw (DrawBehavior behavior) {
+		drawOverride = behavior;
+	}
+	
 	/**
 	 * PGraphics renderer used to manipulate and draw this NestSprite instance.
 	 * Will return <tt>null</tt> until this NestSprite is added to the display list.
@@ -845,6 +1364,9 @@ public class NestSprite extends EventDispatcher {
 	
 	/**
 	 * Set PGraphics renderer used to manipulate and draw this NestSprite instance.
+	 * An offscreen renderer is opened (<tt>beginDraw()</tt>) once per frame, by the first
+	 * NestSprite that draws into it, and is closed and drawn to screen once per frame,
+	 * after the last NestSprite that draws into it.
 	 * @param	renderer		PGraphics renderer.
 	 * @param	setChildren		If true, the PGraphics renderer for all descendants will also be set. 
 	 */
@@ -881,6 +1403,12 @@ public class NestSprite extends EventDispatcher {
 	 * @param	disposeChildren		Pass <tt>true</tt> to also dispose of all children. 
 	 */
 	public void dispose (boolean disposeChildren) {
+		detachSpatialIndex();
+		NestSpriteContainer container = activeSetContainer();
+		if (container != null) {
+			container.unregisterActiveSprites(this);
+		}
+		
 		if (disposeChildren) {
 			if (childList != null) {
 				int i = childList.size();
@@ -893,6 +1421,7 @@ public class NestSprite extends EventDispatcher {
 		if (childList != null) {
 			childList.clear();
 			childList = null;
+			invalidateSubtreeBounds();
 		}
 		if (parent != null) {
 			parent.removeChild(this);
@@ -901,12 +1430,11 @@ public class NestSprite extends EventDispatcher {
 		parent = null;
 		p = null;
 		g = null;
+		bitmapCache = null;
 		deleteObservers();
 		
 		updateOverride = null;
-		updateOverrideTarget = null;
 		drawOverride = null;
-		drawOverrideTarget = null;
 		
 		isDisposed = true;
 		
@@ -920,24 +1448,21 @@ public class NestSprite extends EventDispatcher {
 	 * @param	localPt		A point, in the local coordinate space, to transform.
 	 */
 	public Point2D.Float localToGlobal (Point2D localPt) {
-		Point2D.Float globalPt = new Point2D.Float();
-		
-		NestSprite ns = this;
-		transform.setToIdentity();
-		ArrayList<NestSprite> ancestors = new ArrayList<NestSprite>();
-		while (ns != null) {
-			ancestors.add(ns);
-			ns = ns.parent;
-		}
-		
-		ListIterator<NestSprite> i = ancestors.listIterator(ancestors.size());
-		while (i.hasPrevious()) {
-			ns = i.previous();
-			transform.translate(ns.x, ns.y);
-			transform.scale(ns.scaleX, ns.scaleY);
-			transform.rotate(ns.rotationZ);
-		}
-		transform.transform(localPt, globalPt);
+		return localToGlobal(localPt, new Point2D.Float());
+	}
+	
+	/**
+	 * Transform a point from the local coordinate space of this NestSprite instance
+	 * to the coordinate space of the top-level NestSpriteContainer,
+	 * storing the result into <tt>globalPt</tt>.
+	 * 
+	 * @param	localPt		A point, in the local coordinate space, to transform.
+	 * @param	globalPt	The Point to store the result into; may be the same instance as <tt>localPt</tt>.
+	 * @return				<tt>globalPt</tt>.
+	 */
+	public Point2D.Float localToGlobal (Point2D localPt, Point2D.Float globalPt) {
+		validateWorldTransform();
+		worldMatrix.transform(localPt, globalPt);
 		
 		return globalPt;
 	}
@@ -950,17 +1475,23 @@ public class NestSprite extends EventDispatcher {
 	 * 						top-level NestSpriteContainer, to transform.
 	 */
 	public Point2D.Float globalToLocal (Point2D globalPt) {
-		Point2D.Float localPt = new Point2D.Float();
-		
-		NestSprite ns = this;
-		transform.setToIdentity();
-		while (ns != null) {
-			transform.rotate(-ns.rotationZ);
-			transform.scale(1/ns.scaleX, 1/ns.scaleY);
-			transform.translate(-ns.x, -ns.y);
-			ns = ns.parent;
-		}
-		transform.transform(globalPt, localPt);
+		return globalToLocal(globalPt, new Point2D.Float());
+	}
+	
+	/**
+	 * Transform a point from the coordinate space of the top-level NestSpriteContainer
+	 * to the local coordinate space of this NestSprite instance,
+	 * storing the result into <tt>localPt</tt>.
+	 * 
+	 * @param	globalPt	A point, in the coordinate space of the
+	 * 						top-level NestSpriteContainer, to transform.
+	 * @param	localPt		The Point to store the result into; may be the same instance as <tt>globalPt</tt>.
+	 * @return				<tt>localPt</tt>.
+	 */
+	public Point2D.Float globalToLocal (Point2D globalPt, Point2D.Float localPt) {
+		validateWorldTransform();
+		validateWorldInverse();
+		worldInverse.transform(globalPt, localPt);
 		
 		return localPt;
 	}
@@ -987,34 +1518,71 @@ public class NestSprite extends EventDispatcher {
 	 * 							to check against bounds of this NestSprite instance.
 	 * @param	testChildren	If true, the hit test will be performed against
 	 * 							all descendants of this NestSprite instance.
+	 * 							If the NestSpriteContainer has a spatial index enabled,
+	 * 							descendants are tested at their positions as of the
+	 * 							most recent display list update.
 	 * @return	Returns <tt>true</tt> if the Point is within the bounds rect
 	 * 			of this NestSprite instance or, if <tt>testChildren</tt> is <tt>true</tt>,
 	 * 			the bounds rect of any of its descendants.
 	 */
 	public boolean hitTest (Point2D pt, boolean testChildren) {
+		return hitTest(frameContext(), pt, testChildren, false);
+	}
+	
+	/**
+	 * Implementation of {@link #hitTest(Point2D, boolean)}.
+	 * 
+	 * @param	ctx		Context to count hit tests into; may be null.
+	 * @param	prune	If true, skip subtrees whose aggregate bounds do not contain the point.
+	 * 					Aggregate bounds only pick up changes to transforms and bounds rects when
+	 * 					the display list is updated, so pruning is only used by event dispatch,
+	 * 					which, like the spatial index, tests the display list as of its most recent update;
+	 * 					public hit tests see changes made since, e.g. by earlier code in the same frame.
+	 */
+	private boolean hitTest (FrameContext ctx, Point2D pt, boolean testChildren, boolean prune) {
+		if (ctx != null && ctx.statsEnabled) { ctx.hitTested++; }
 		if (bounds().contains(pt)) {
 			return true;
 		}
 		
-		if (testChildren) {
-			NestSprite child;
-			Point2D.Float childPt = (Point2D.Float)(pt.clone());
-			for (int i=0; i<childList.size(); i++) {
-				child = childList.get(i);
-				transform.setToIdentity();
-				transform.rotate(-child.rotationZ);
-				transform.scale(1/child.scaleX, 1/child.scaleY);
-				transform.translate(-child.x, -child.y);
-				transform.transform(pt, childPt);
-				
-				if (child.hitTest(childPt)) {
-					return true;
-				}
+		// a point outside the aggregate bounds of this subtree cannot hit any descendant.
+		if (!testChildren || (prune && !subtreeContains(pt.getX(), pt.getY()))) {
+			return false;
+		}
+		
+		if (spatialIndex != null) {
+			return spatialIndex.hitTestDescendants(ctx, this, pt);
+		}
+		
+		NestSprite child;
+		Point2D.Float childPt = hitTestPt;
+		for (int i=0; i<childList.size(); i++) {
+			child = childList.get(i);
+			if (child.isDisposed) { continue; }
+			child.validateTransform();
+			try {
+				child.localMatrix.inverseTransform(pt, childPt);
+			} catch (NoninvertibleTransformException e) {
+				// a child scaled to zero has no area to hit, nor do its descendants.
+				continue;
+			}
+			
+			if (child.hitTest(ctx, childPt, true, prune)) {
+				return true;
 			}
 		}
 		
 		return false;
 	}
+	
+	/**
+	 * Force the {@link #cacheAsBitmap} buffer of this NestSprite instance,
+	 * and of any ancestors, to be redrawn on the next frame.
+	 * Call this when the output of <tt>draw()</tt> changes in a way Nest cannot detect.
+	 */
+	public void invalidateBitmapCache () {
+		invalidateBitmapCaches(this);
+	}
 	//-----</MISC PUBLIC METHODS>------------------------------------//
 	
 	
@@ -1174,28 +1742,198 @@ public class NestSprite extends EventDispatcher {
 	protected void draw (PApplet p) {
 		// optionally implemented by subclasses
 	}
+	
+	/**
+	 * <p>
+	 * Return this NestSprite to the state of a newly-constructed instance, for reuse.
+	 * Called by {@link NestSpritePool#release(NestSprite)}, after removing this NestSprite
+	 * from its parent.
+	 * </p><p>
+	 * Removes all children, observers, and update() and draw() overrides, and resets
+	 * transform, display, and update properties to their defaults.  The bounds rect is kept.
+	 * Subclasses with state of their own should override this method to reset it,
+	 * and call <tt>super.reset()</tt>.
+	 * </p>
+	 */
+	protected void reset () {
+		int i = childList.size();
+		while (i-- > 0) {
+			removeChild(childList.get(i));
+		}
+		deleteObservers();
+		
+		updateOverride = null;
+		drawOverride = null;
+		explicitActive = null;
+		
+		x = 0;
+		y = 0;
+		z = 0;
+		scaleX = 1;
+		scaleY = 1;
+		scaleZ = 1;
+		rotationX = 0;
+		rotationY = 0;
+		rotationZ = 0;
+		blendMode = NO_BLEND_MODE;
+		visible = true;
+		inFront = false;
+		inputEnabled = true;
+		inputChildren = true;
+		handleCaptureEvents = false;
+		cacheAsBitmap = false;
+		independentUpdate = false;
+		updateInterval = 1;
+		updateIntervalMillis = 0;
+		updatePriority = 0;
+		name = null;
+		
+		g = null;
+		rendererSupportsUpdatePixels = true;
+		bitmapCache = null;
+		bitmapCacheValid = false;
+		transformDirty = true;
+		parentWorldVersion = -1;
+		mouseValidEpoch = -1;
+		subtreeBoundsDirty = true;
+		zOrderDirty = false;
+		prevStep = 0;
+		lastUpdateFrame = Integer.MIN_VALUE / 2;
+		lastUpdateNanos = Long.MIN_VALUE / 2;
+		updatesDeferred = 0;
+	}
 	//-----</MISC PROTECTED METHODS>---------------------------------//
 	
 	
 	
 	//-----<PACKAGE-PRIVATE DISPLAY LIST>----------------------------//
-	void onAdded (NestSprite _parent) {
-		parent = _parent;
+	/**
+	 * Add <tt>sprite</tt> to the child list now, without deferral;
+	 * also used to apply a deferred addition.
+	 */
+	void applyAddChild (int index, NestSprite sprite) {
+		if (sprite.parent != null && sprite.parent != this) {
+			// if sprite already belongs to another child list, remove it from that parent
+			sprite.parent.applyRemoveChild(sprite);
+		}
 		
-		// traverse up the display list up to NestSpriteContainer.
-		// if this NestSprite is not on-screen (if a NestSpriteContainer is not an ancestor),
-		// do not call onAddedToStage until it is.
-		if (parent == null) { return; }
+		if (!hasChild(sprite)) {
+			index = Math.min(index, childList.size());
+			childList.add(index, sprite);
+			childrenInserted(index, 1);
+			invalidateSubtreeBounds();
+			invalidateBitmapCaches(this);
+			zOrderDirty = true;
+		}
 		
-		try {
-			updateTransforms();
-		} catch (NoninvertibleTransformException e) {
-			System.out.println("NestSprite.onAdded Exception:");
+		sprite.onAdded(this);
+		
+		NestSpriteContainer container = activeSetContainer();
+		if (container != null) {
+			container.registerActiveSprites(sprite);
+			container.queuePrerender(sprite);
+		}
+	}
+	
+	/**
+	 * Add <tt>sprites</tt> to the child list now, without deferral;
+	 * also used to apply a deferred addition.
+	 */
+	void applyAddChildren (Collection<? extends NestSprite> sprites) {
+		int first = childList.size();
+		childList.ensureCapacity(first + sprites.size());
+		for (NestSprite sprite : sprites) {
+			if (sprite == this) { continue; }
+			if (sprite.parent != null && sprite.parent != this) {
+				sprite.parent.applyRemoveChild(sprite);
+			}
+			if (!hasChild(sprite)) {
+				childList.add(sprite);
+				sprite.childIndex = childList.size() - 1 + childIndexBase;
+			}
+		}
+		if (childList.size() > first) {
+			invalidateSubtreeBounds();
+			invalidateBitmapCaches(this);
+			zOrderDirty = true;
+		}
+		
+		NestSpriteContainer container = activeSetContainer();
+		for (NestSprite sprite : sprites) {
+			if (sprite == this) { continue; }
+			sprite.onAdded(this);
+			if (container != null) {
+				container.registerActiveSprites(sprite);
+				container.queuePrerender(sprite);
+			}
+		}
+	}
+	
+	/**
+	 * Remove <tt>sprite</tt> from the child list now, without deferral;
+	 * also used to apply a deferred removal.
+	 */
+	void applyRemoveChild (NestSprite sprite) {
+		NestSpriteContainer container = activeSetContainer();
+		if (container != null && sprite.parent == this) {
+			container.unregisterActiveSprites(sprite);
+		}
+		if (hasChild(sprite)) {
+			int index = sprite.childIndex - childIndexBase;
+			childList.remove(index);
+			childrenRemoved(index, 1);
+			invalidateSubtreeBounds();
+			invalidateBitmapCaches(this);
+		}
+		sprite.detachSpatialIndex();
+		sprite.onRemoved();
+	}
+	
+	/**
+	 * Move <tt>sprite</tt>, a child of this NestSprite, to <tt>index</tt> in the child list now, without deferral;
+	 * also used to apply a deferred move.
+	 */
+	void applySetChildIndex (int index, NestSprite sprite) {
+		int oldIndex = sprite.childIndex - childIndexBase;
+		childList.remove(oldIndex);
+		childList.add(index, sprite);
+		reindexChildren(Math.min(index, oldIndex), Math.max(index, oldIndex) + 1);
+		invalidateBitmapCaches(this);
+		zOrderDirty = true;
+	}
+	
+	/**
+	 * Swap <tt>sprite1</tt> and <tt>sprite2</tt>, both children of this NestSprite, now, without deferral;
+	 * also used to apply a deferred swap.
+	 */
+	void applySwapChildren (NestSprite sprite1, NestSprite sprite2) {
+		swapChildrenAt(sprite1.childIndex - childIndexBase, sprite2.childIndex - childIndexBase);
+		invalidateBitmapCaches(this);
+		zOrderDirty = true;
+	}
+	
+	void onAdded (NestSprite _parent) {
+		parent = _parent;
+		transformDirty = true;
+		
+		// traverse up the display list up to NestSpriteContainer.
+		// if this NestSprite is not on-screen (if a NestSpriteContainer is not an ancestor),
+		// do not call onAddedToStage until it is.
+		if (parent == null) { return; }
+		
+		try {
+			updateTransforms();
+		} catch (NoninvertibleTransformException e) {
+			System.out.println("NestSprite.onAdded Exception:");
 			e.printStackTrace();
 		}
 		
 		p = parent.p;
 		g = parent.g;
+		spatialIndex = parent.spatialIndex;
+		if (spatialIndex != null) {
+			spatialIndex.update(this);
+		}
 		this.dispatchEvent(new Event(Event.ADDED));
 		
 		NestSprite parentSprite = parent;
@@ -1233,6 +1971,7 @@ public class NestSprite extends EventDispatcher {
 	
 	void onRemoved () {
 		parent = null;
+		transformDirty = true;
 		p = null;
 		this.dispatchEvent(new Event(Event.REMOVED));
 	}
@@ -1243,51 +1982,228 @@ public class NestSprite extends EventDispatcher {
 	//-----<PACKAGE-PRIVATE FRAME UPDATES>---------------------------//
 	/**
 	 * update() self, then prerender() all descendants.
+	 * @param	ctx							Context of the current prerender() pass.
 	 * @param	bSuppressUpdateCalls		Passing true will suppress (possibly overridden) calls to update(),
 	 * 										and will only perform geometric transforms on all descendants.
 	 * 										Used for internal display list traversal, e.g. event propagation.
 	 * @throws	NoninvertibleTransformException 
 	 */
-	void prerender (boolean bSuppressUpdateCalls) throws NoninvertibleTransformException {
-		if (!bSuppressUpdateCalls) {
-			if (updateOverride != null) {
-				try {
-					updateOverride.invoke(updateOverrideTarget, new Object[] { p, this });
-				} catch (Exception e) {
-					System.err.println("Error invoking update() override:");
-					e.printStackTrace();
-				}
-			} else {
-				update(p);
-			}
+	void prerender (FrameContext ctx, boolean bSuppressUpdateCalls) throws NoninvertibleTransformException {
+		// disposed during this pass, but not yet removed from its parent's child list.
+		if (isDisposed) { return; }
+		prerenderStamp = ctx.prerenderSerial;
+		if (ctx.statsEnabled) { ctx.visited++; }
+		
+		if (!bSuppressUpdateCalls && isActive() && updateDue(ctx)) {
+			callUpdate(ctx);
 		}
 		
 		// dispose() called from within update(), so bail
 		if (isDisposed) { return; }
 		
 		updateTransforms();
+		validateBounds();
+		validateDrawState();
+		if (z != cachedZ) {
+			cachedZ = z;
+			if (prerenderForked) {
+				prerenderTask.parentZOrderChanged = true;
+			} else if (parent != null) {
+				parent.zOrderDirty = true;
+			}
+		}
+		if (spatialIndex != null) {
+			spatialIndex.update(this);
+		}
 		
 		// for rendering, children are iterated from back of the display list to the front.
-		// TODO: is there a fail-fast way to iterate through childList so i don't have to rewrite this iteration logic multiple times?
+		// changes to the child list made during the pass are deferred until it completes,
+		// so the list can be iterated directly.
 		NestSprite child;
-		for (int i=0; i<childList.size(); i++) {
+		ForkJoinPool pool = ctx.pool;
+		for (int i=0, n=childList.size(); i<n; i++) {
 			child = childList.get(i);
-			child.prerender(bSuppressUpdateCalls);
-			if (i < childList.size() && childList.get(i) != child) {
-				// child moved to different index or removed from childList entirely;
-				// update iterator index to ensure no elements are skipped.
-				i--;
+			if (pool != null && child.independentUpdate) {
+				// run independent subtrees concurrently with the remaining children.
+				forkPrerender(ctx, pool, child, bSuppressUpdateCalls);
+				continue;
+			}
+			child.prerender(ctx, bSuppressUpdateCalls);
+		}
+		if (forkedChildren != null && !forkedChildren.isEmpty()) {
+			joinForkedPrerenders(ctx);
+		}
+		
+		sortChildrenIfDirty(ctx);
+	}
+	
+	/**
+	 * Returns true if update() should be called during the current update pass,
+	 * according to updateInterval, updateIntervalMillis, and updatePriority.
+	 */
+	boolean updateDue (FrameContext ctx) {
+		if (updateInterval > 1 && ctx.updateFrame - lastUpdateFrame < updateInterval) {
+			return false;
+		}
+		if (updateIntervalMillis > 0 && ctx.updateTimeNanos - lastUpdateNanos < (long)(updateIntervalMillis * 1000000)) {
+			return false;
+		}
+		if (ctx.updateBudgeted && updatePriority + updatesDeferred < 0 && System.nanoTime() > ctx.updateDeadlineNanos) {
+			// over budget; defer to a later frame.
+			updatesDeferred++;
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Call update(), or the update() override set via setUpdate().
+	 */
+	void callUpdate (FrameContext ctx) {
+		if (ctx.statsEnabled) { ctx.updated++; }
+		lastUpdateFrame = ctx.updateFrame;
+		lastUpdateNanos = ctx.updateTimeNanos;
+		updatesDeferred = 0;
+		
+		NestProfiler prof = ctx.profiler;
+		long startNanos = (prof != null) ? System.nanoTime() : 0;
+		
+		if (updateOverride != null) {
+			try {
+				updateOverride.update(p, this);
+			} catch (Exception e) {
+				System.err.println("Error invoking update() override:");
+				e.printStackTrace();
+			}
+		} else {
+			update(p);
+		}
+		
+		if (prof != null) {
+			prof.record(this, NestProfiler.UPDATE, System.nanoTime() - startNanos);
+		}
+	}
+	
+	/**
+	 * Note the transform before the current fixed-timestep update step, to interpolate from;
+	 * called on every NestSprite on the display list at the start of each step.
+	 * 
+	 * @param	step	Serial number of the current step.
+	 */
+	void capturePrevTransform (int step) {
+		prevX = x;
+		prevY = y;
+		prevScaleX = scaleX;
+		prevScaleY = scaleY;
+		prevRotationZ = rotationZ;
+		prevStep = step;
+	}
+	
+	/**
+	 * prerender() this NestSprite and its descendants, without calling update(),
+	 * unless it or an ancestor has already been visited during the current prerender() pass.
+	 * Used by a NestSpriteContainer with an active set enabled, to visit only changed subtrees.
+	 * 
+	 * @return	<tt>false</tt> if this NestSprite is no longer on <tt>container</tt>'s display list.
+	 */
+	boolean prerenderSubtree (NestSpriteContainer container) throws NoninvertibleTransformException {
+		FrameContext ctx = container.frame;
+		NestSprite root = this;
+		for (NestSprite ns = this; ns != null; ns = ns.parent) {
+			if (ns.prerenderStamp == ctx.prerenderSerial) { return true; }
+			root = ns;
+		}
+		if (root != container || isDisposed) { return false; }
+		
+		if (parent != null) {
+			parent.validateWorldTransform();
+			parent.validateMouse();
+		}
+		prerender(ctx, true);
+		return true;
+	}
+	
+	/**
+	 * Re-sort the child list by z, if z-sorting is on and a child's z has changed.
+	 */
+	void sortChildrenIfDirty (FrameContext ctx) {
+		if (ctx.zSorting && zOrderDirty && !isDisposed) {
+			zOrderDirty = false;
+			if (sortChildrenByZ()) {
+				invalidateBitmapCaches(this);
+			}
+		}
+	}
+	
+	/**
+	 * Start prerender() of an independentUpdate child on <tt>pool</tt>,
+	 * with its own FrameContext, forked from <tt>ctx</tt>.
+	 */
+	private void forkPrerender (FrameContext ctx, ForkJoinPool pool, NestSprite child, boolean bSuppressUpdateCalls) {
+		if (child.prerenderTask == null) {
+			child.prerenderTask = new PrerenderTask(child);
+		} else {
+			child.prerenderTask.reinitialize();
+		}
+		child.prerenderTask.bSuppressUpdateCalls = bSuppressUpdateCalls;
+		child.prerenderTask.frame.fork(ctx);
+		child.prerenderTask.parentBoundsChanged = false;
+		child.prerenderTask.parentBitmapsChanged = false;
+		child.prerenderTask.parentZOrderChanged = false;
+		child.prerenderForked = true;
+		
+		if (forkedChildren == null) {
+			forkedChildren = new ArrayList<NestSprite>();
+		}
+		forkedChildren.add(child);
+		
+		if (ForkJoinTask.inForkJoinPool()) {
+			child.prerenderTask.fork();
+		} else {
+			pool.execute(child.prerenderTask);
+		}
+	}
+	
+	/**
+	 * Wait for all children forked by forkPrerender() to complete,
+	 * apply the changes each recorded to this NestSprite and its ancestors,
+	 * and add the counters of each to <tt>ctx</tt>.
+	 * Any exception thrown by a child's prerender() is rethrown,
+	 * after all children have completed.
+	 */
+	private void joinForkedPrerenders (FrameContext ctx) throws NoninvertibleTransformException {
+		Throwable error = null;
+		NestSprite child;
+		for (int i=0; i<forkedChildren.size(); i++) {
+			child = forkedChildren.get(i);
+			try {
+				child.prerenderTask.join();
+			} catch (RuntimeException e) {
+				if (error == null) { error = e; }
+			} catch (Error e) {
+				if (error == null) { error = e; }
 			}
+			child.prerenderForked = false;
+			child.prerenderTask.applyToParent(this);
+			ctx.join(child.prerenderTask.frame);
 		}
+		forkedChildren.clear();
+		
+		if (error == null) { return; }
+		if (error instanceof Error) {
+			throw (Error)error;
+		}
+		throw (RuntimeException)error;
 	}
 	
 	/**
-	 * Translate and rotate,
+	 * Translate and rotate (or load the accumulated matrix, if managed),
 	 * draw() self, then repeat process recursively through all children.
 	 * 
+	 * @param	ctx	Context of the current render pass.
 	 * @param	p	The PApplet application instance.
 	 */
-	void render (PApplet p) {
+	void render (FrameContext ctx, PApplet p) {
 		// dispose() called between update() and draw(), so bail
 		if (isDisposed) { return; }
 		
@@ -1298,8 +2214,36 @@ public class NestSprite extends EventDispatcher {
 		// is called during draw(), sending this.g out of scope.
 		PGraphics _g = g;
 		
+		// don't draw() this subtree if it lies entirely outside the viewport
+		if (ctx.culling && !rendererIs3D && isCulled(ctx, p, _g)) {
+			if (ctx.statsEnabled) { ctx.culled++; }
+			return;
+		}
+		
+		// while filling a cacheAsBitmap buffer, draw into the buffer
+		// rather than into this NestSprite's own renderer.
+		PGraphics ownRenderer = null;
+		if (ctx.bitmapTarget != null) {
+			ownRenderer = g;
+			g = _g = ctx.bitmapTarget;
+		}
+		
+		// an offscreen renderer is opened by the first NestSprite to draw into it each frame,
+		// and closed and composited once, after the last NestSprite to draw into it.
+		RenderLayer layer = null;
 		if (_g != p.g) {
-			_g.beginDraw();
+			layer = renderLayer(ctx, _g);
+			if (!layer.open) {
+				_g.beginDraw();
+				layer.open = true;
+				layer.matrix = IDENTITY_MATRIX;
+				layer.supportsUpdatePixels = rendererSupportsUpdatePixels;
+			}
+			layer.lastSprite = this;
+			if (layer.compositeAfter == this) {
+				layer.lastReached = true;
+			}
+			layer.depth++;
 		}
 		
 		// apply changes for this leaf, and all descendants:
@@ -1310,58 +2254,94 @@ public class NestSprite extends EventDispatcher {
 		
 		// if a blendMode is specified, set blendMode only if
 		// different than blendMode at this point in the display list.
-		// if not specified, currentBlendMode will be retained (no blendMode change).
-		if (blendMode != NO_BLEND_MODE && blendMode != NestSprite.currentBlendMode) {
-			previousBlendMode = NestSprite.currentBlendMode;
+		// if not specified, the current blend mode will be retained (no blendMode change).
+		if (blendMode != NO_BLEND_MODE && blendMode != ctx.blendMode) {
+			previousBlendMode = ctx.blendMode;
 			_g.blendMode(blendMode);
-			NestSprite.currentBlendMode = blendMode;
+			ctx.blendMode = blendMode;
 		}
 		
-		_g.pushMatrix();
+		// with a managed matrix, the accumulated matrix of this NestSprite is loaded onto _g directly;
+		// otherwise, this NestSprite's transforms are pushed onto the matrix stack of _g.
+		float tx = x;
+		float ty = y;
+		float sx = scaleX;
+		float sy = scaleY;
+		float rz = rotationZ;
+		if (ctx.renderInterpolation < 1.0f && prevStep == ctx.updateStep && ctx.updateStep != 0) {
+			// fixed-timestep update; draw between the transforms before and after the last step.
+			float t = ctx.renderInterpolation;
+			tx = prevX + t * (x - prevX);
+			ty = prevY + t * (y - prevY);
+			sx = prevScaleX + t * (scaleX - prevScaleX);
+			sy = prevScaleY + t * (scaleY - prevScaleY);
+			float dr = rotationZ - prevRotationZ;
+			dr -= PApplet.TWO_PI * Math.round(dr / PApplet.TWO_PI);
+			rz = prevRotationZ + t * dr;
+		}
+		
+		AffineTransform outerMatrix = null;
+		if (ctx.managedMatrixEnabled && !_g.is3D()) {
+			outerMatrix = (layer != null) ? layer.matrix : ctx.managedMatrix;
+			renderMatrix.setTransform(outerMatrix);
+			renderMatrix.translate(tx, ty);
+			renderMatrix.scale(sx, sy);
+			renderMatrix.rotate(rz);
+			if (layer != null) {
+				layer.matrix = renderMatrix;
+			} else {
+				ctx.managedMatrix = renderMatrix;
+			}
+			loadMatrix(_g, renderMatrix);
+		} else {
+			_g.pushMatrix();
 			
 			if (rendererIs3D) {
-				_g.translate(x, y, z);
+				_g.translate(tx, ty, z);
 				
-				_g.scale(scaleX, scaleY, scaleZ);
+				_g.scale(sx, sy, scaleZ);
 				
 				// TODO: better to calculate rotation around x/y/z vector?
 				_g.rotateX(rotationX);
 				_g.rotateY(rotationY);
-				_g.rotateZ(rotationZ);
+				_g.rotateZ(rz);
 			} else {
-				_g.translate(x, y);
+				_g.translate(tx, ty);
 				
-				_g.scale(scaleX, scaleY);
+				_g.scale(sx, sy);
 				
-				_g.rotate(rotationZ);
+				_g.rotate(rz);
 			}
-			
+		}
+		
+		if (!cacheAsBitmap || rendererIs3D || !renderBitmapCache(ctx, p, _g)) {
 			// draw self below children
-			if (drawOverride != null) {
-				try {
-					drawOverride.invoke(drawOverrideTarget, new Object[] { p, this });
-				} catch (Exception e) {
-					System.err.println("Error invoking draw() override:");
-					e.printStackTrace();
-				}
-			} else {
-				draw(p);
-			}
+			drawSelf(ctx, p);
 			
 			// if dispose() called from within draw(), don't attempt to draw children
 			if (!isDisposed) {
 				// draw children above self
-				renderChildren();
+				renderChildren(ctx);
 			}
+		}
 		
 		// revert changes applied to this leaf, and all descendants:
-		// matrix transforms, depth hints, blend modes
-		_g.popMatrix();
+		// matrix transforms, depth hints, blend modes.
+		// a managed matrix is not reloaded here; each NestSprite loads its own before drawing.
+		if (outerMatrix != null) {
+			if (layer != null) {
+				layer.matrix = outerMatrix;
+			} else {
+				ctx.managedMatrix = outerMatrix;
+			}
+		} else {
+			_g.popMatrix();
+		}
 		
 		// reset blendMode if it was changed
-		if (blendMode != NO_BLEND_MODE && previousBlendMode != NestSprite.currentBlendMode) {
+		if (blendMode != NO_BLEND_MODE && previousBlendMode != ctx.blendMode) {
 			_g.blendMode((previousBlendMode == NO_BLEND_MODE) ? PROCESSING_DEFAULT_BLEND_MODE : previousBlendMode);
-			NestSprite.currentBlendMode = previousBlendMode;
+			ctx.blendMode = previousBlendMode;
 			previousBlendMode = NO_BLEND_MODE;
 		}
 		
@@ -1369,14 +2349,197 @@ public class NestSprite extends EventDispatcher {
 			_g.hint(PGraphics.DISABLE_DEPTH_TEST);
 		}
 		
-		if (!isDisposed) {
-			if (_g != p.g) {
-				_g.endDraw();
-				if (rendererSupportsUpdatePixels) {
-					p.image(_g, 0, 0);
+		if (!isDisposed && ownRenderer != null) {
+			g = ownRenderer;
+		}
+		
+		if (layer != null) {
+			layer.depth--;
+			if (!isDisposed && layer.depth == 0 && layer.lastReached) {
+				layer.close(ctx, p);
+			}
+		}
+		
+		if (!cacheAsBitmap && bitmapCache != null) {
+			// cacheAsBitmap was turned off; release the buffer.
+			bitmapCache = null;
+		}
+	}
+	
+	/**
+	 * Sort the child list by ascending z (back to front), using insertion sort:
+	 * children already in order are passed over in a single comparison each,
+	 * so only children whose z changed, or that were newly added, are moved.
+	 * Children with equal z retain their relative order.
+	 * 
+	 * @return	<tt>true</tt> if any children were moved.
+	 */
+	private boolean sortChildrenByZ () {
+		boolean moved = false;
+		NestSprite child;
+		int j;
+		for (int i=1; i<childList.size(); i++) {
+			child = childList.get(i);
+			j = i - 1;
+			if (!(childList.get(j).z > child.z)) { continue; }
+			
+			while (j >= 0 && childList.get(j).z > child.z) {
+				childList.set(j + 1, childList.get(j));
+				childList.get(j + 1).childIndex = j + 1 + childIndexBase;
+				j--;
+			}
+			childList.set(j + 1, child);
+			child.childIndex = j + 1 + childIndexBase;
+			moved = true;
+		}
+		return moved;
+	}
+	
+	/**
+	 * Close and composite any offscreen renderers still open at the end of the frame,
+	 * and note the last NestSprite to draw into each, as the point
+	 * at which to composite it on the next frame.
+	 * Called by NestSpriteContainer after render().
+	 */
+	static void compositeRenderLayers (FrameContext ctx, PApplet p) {
+		ArrayList<RenderLayer> renderLayers = ctx.renderLayers;
+		RenderLayer layer;
+		int i = renderLayers.size();
+		while (i-- > 0) {
+			layer = renderLayers.get(i);
+			if (layer.open) {
+				layer.close(ctx, p);
+			}
+			if (layer.lastSprite == null) {
+				// not drawn into this frame
+				renderLayers.remove(i);
+				continue;
+			}
+			layer.compositeAfter = layer.lastSprite;
+			layer.lastSprite = null;
+			layer.lastReached = false;
+			layer.depth = 0;
+		}
+	}
+	
+	private static RenderLayer renderLayer (FrameContext ctx, PGraphics renderer) {
+		ArrayList<RenderLayer> renderLayers = ctx.renderLayers;
+		RenderLayer layer;
+		for (int i=0; i<renderLayers.size(); i++) {
+			layer = renderLayers.get(i);
+			if (layer.renderer == renderer) {
+				return layer;
+			}
+		}
+		layer = new RenderLayer(renderer);
+		renderLayers.add(layer);
+		return layer;
+	}
+	
+	/**
+	 * Replace the current matrix of a 2D renderer with the specified matrix.
+	 */
+	static void loadMatrix (PGraphics renderer, AffineTransform m) {
+		renderer.resetMatrix();
+		renderer.applyMatrix(
+				(float)m.getScaleX(), (float)m.getShearX(), (float)m.getTranslateX(),
+				(float)m.getShearY(), (float)m.getScaleY(), (float)m.getTranslateY());
+	}
+	
+	/**
+	 * Call draw(), or the draw() override set via setDraw().
+	 */
+	void drawSelf (FrameContext ctx, PApplet p) {
+		if (ctx.statsEnabled) { ctx.drawn++; }
+		NestProfiler prof = ctx.profiler;
+		long startNanos = (prof != null) ? System.nanoTime() : 0;
+		
+		if (drawOverride != null) {
+			try {
+				drawOverride.draw(p, this);
+			} catch (Exception e) {
+				System.err.println("Error invoking draw() override:");
+				e.printStackTrace();
+			}
+		} else {
+			draw(p);
+		}
+		
+		if (prof != null) {
+			prof.record(this, NestProfiler.DRAW, System.nanoTime() - startNanos);
+		}
+	}
+	
+	/**
+	 * Draw the cacheAsBitmap buffer into the current coordinate space of <tt>_g</tt>,
+	 * first redrawing this NestSprite and its descendants into it if necessary.
+	 * 
+	 * @return	<tt>false</tt> if no buffer could be sized (no bounds rects are set),
+	 * 			in which case nothing was drawn.
+	 */
+	private boolean renderBitmapCache (FrameContext ctx, PApplet p, PGraphics _g) {
+		if (!bitmapCacheValid || bitmapCache == null) {
+			if (subtreeBoundsDirty) {
+				updateSubtreeBounds();
+			}
+			if (subtreeMinX > subtreeMaxX) { return false; }
+			
+			bitmapCacheX = (float)Math.floor(subtreeMinX);
+			bitmapCacheY = (float)Math.floor(subtreeMinY);
+			int w = (int)Math.ceil(subtreeMaxX - bitmapCacheX);
+			int h = (int)Math.ceil(subtreeMaxY - bitmapCacheY);
+			if (w <= 0 || h <= 0) { return false; }
+			
+			if (bitmapCache == null || bitmapCache.width != w || bitmapCache.height != h) {
+				bitmapCache = p.createGraphics(w, h);
+			}
+			
+			// redirect all drawing, including PApplet drawing calls within draw(), into the buffer.
+			PGraphics ownRenderer = g;
+			PGraphics pRenderer = p.g;
+			PGraphics outerTarget = ctx.bitmapTarget;
+			int outerBlendMode = ctx.blendMode;
+			boolean outerCulling = ctx.culling;
+			float outerInterpolation = ctx.renderInterpolation;
+			AffineTransform outerManagedMatrix = ctx.managedMatrix;
+			
+			ctx.bitmapTarget = bitmapCache;
+			g = bitmapCache;
+			p.g = bitmapCache;
+			ctx.blendMode = NO_BLEND_MODE;
+			ctx.culling = false;
+			// the buffer is not redrawn as the interpolation changes, so fill it with the current transforms.
+			ctx.renderInterpolation = 1.0f;
+			try {
+				bitmapCache.beginDraw();
+				bitmapCache.clear();
+				bitmapCache.translate(-bitmapCacheX, -bitmapCacheY);
+				if (ctx.managedMatrixEnabled) {
+					ctx.managedMatrix = AffineTransform.getTranslateInstance(-bitmapCacheX, -bitmapCacheY);
+				}
+				drawSelf(ctx, p);
+				if (!isDisposed) {
+					renderChildren(ctx);
+				}
+				bitmapCache.endDraw();
+			} finally {
+				ctx.bitmapTarget = outerTarget;
+				p.g = pRenderer;
+				ctx.blendMode = outerBlendMode;
+				ctx.culling = outerCulling;
+				ctx.renderInterpolation = outerInterpolation;
+				ctx.managedMatrix = outerManagedMatrix;
+				if (!isDisposed) {
+					g = ownRenderer;
 				}
 			}
+			
+			if (isDisposed) { return true; }
+			bitmapCacheValid = true;
 		}
+		
+		_g.image(bitmapCache, bitmapCacheX, bitmapCacheY);
+		return true;
 	}
 	//-----</PACKAGE-PRIVATE FRAME UPDATES>--------------------------//
 	
@@ -1393,20 +2556,250 @@ public class NestSprite extends EventDispatcher {
 		}
 	}
 	
+	/**
+	 * Mark the aggregate bounds of this NestSprite, and of all ancestors, as needing recalculation.
+	 * Ancestors of a dirty NestSprite are always dirty, so propagation stops at the first dirty one.
+	 * Propagation also stops at an independentUpdate NestSprite while its subtree is prerendered
+	 * on a worker thread, as its ancestors are shared with other subtrees; its task records the change,
+	 * and applies it once joined.
+	 */
+	void invalidateSubtreeBounds () {
+		NestSprite ns = this;
+		while (ns != null && !ns.subtreeBoundsDirty) {
+			ns.subtreeBoundsDirty = true;
+			if (ns.prerenderForked) {
+				ns.prerenderTask.parentBoundsChanged = true;
+				return;
+			}
+			ns = ns.parent;
+		}
+	}
+	
+	/**
+	 * Returns true if the specified point, in the local coordinate space of this NestSprite,
+	 * is within the aggregate bounds of this NestSprite and all of its descendants.
+	 * A <tt>false</tt> return guarantees that neither this NestSprite nor any descendant
+	 * contains the point; a <tt>true</tt> return is only a candidate hit.
+	 */
+	boolean subtreeContains (double px, double py) {
+		if (subtreeBoundsDirty) {
+			updateSubtreeBounds();
+		}
+		return px >= subtreeMinX && px <= subtreeMaxX && py >= subtreeMinY && py <= subtreeMaxY;
+	}
+	
+	/**
+	 * Invalidate aggregate bounds if the bounds rect has changed since last checked.
+	 */
+	private void validateBounds () {
+		if (boundsLeft != cachedBoundsLeft || boundsTop != cachedBoundsTop ||
+				width != cachedWidth || height != cachedHeight) {
+			cachedBoundsLeft = boundsLeft;
+			cachedBoundsTop = boundsTop;
+			cachedWidth = width;
+			cachedHeight = height;
+			invalidateSubtreeBounds();
+			invalidateBitmapCaches(this);
+		}
+	}
+	
+	/**
+	 * Invalidate ancestors' bitmap caches if visible or blendMode have changed since last checked.
+	 */
+	private void validateDrawState () {
+		if (visible != cachedVisible || blendMode != cachedBlendMode) {
+			cachedVisible = visible;
+			cachedBlendMode = blendMode;
+			if (prerenderForked) {
+				prerenderTask.parentBitmapsChanged = true;
+			} else if (parent != null) {
+				invalidateBitmapCaches(parent);
+			}
+		}
+	}
+	
+	/**
+	 * Mark the bitmap caches of a NestSprite and all of its ancestors as needing a redraw.
+	 * As with invalidateSubtreeBounds(), propagation stops at a NestSprite whose subtree
+	 * is being prerendered on a worker thread.
+	 */
+	private static void invalidateBitmapCaches (NestSprite sprite) {
+		while (sprite != null) {
+			sprite.bitmapCacheValid = false;
+			if (sprite.prerenderForked) {
+				sprite.prerenderTask.parentBitmapsChanged = true;
+				return;
+			}
+			sprite = sprite.parent;
+		}
+	}
+	
+	/**
+	 * Returns true if the aggregate bounds of this NestSprite and its descendants,
+	 * transformed into the pixel space of <tt>_g</tt>, lie entirely outside the current cull rect.
+	 * For PApplet.g, this includes the matrix PApplet.g had when the render pass began
+	 * (e.g. the sketch's own <tt>translate()</tt> and <tt>scale()</tt>);
+	 * an offscreen renderer is drawn into from its own origin, so its NestSprites are culled in world space.
+	 * NestSprites without any bounds rect in their subtree have an unknown extent,
+	 * and are never culled.
+	 */
+	private boolean isCulled (FrameContext ctx, PApplet p, PGraphics _g) {
+		if (subtreeBoundsDirty) {
+			updateSubtreeBounds();
+		}
+		if (subtreeMinX > subtreeMaxX) { return false; }
+		
+		AffineTransform m = worldMatrix;
+		double m00 = m.getScaleX();
+		double m01 = m.getShearX();
+		double m02 = m.getTranslateX();
+		double m10 = m.getShearY();
+		double m11 = m.getScaleY();
+		double m12 = m.getTranslateY();
+		AffineTransform base = (_g == p.g) ? ctx.cullMatrix : null;
+		if (base != null) {
+			// base * world, without allocating.
+			double b00 = base.getScaleX();
+			double b01 = base.getShearX();
+			double b10 = base.getShearY();
+			double b11 = base.getScaleY();
+			double n00 = b00 * m00 + b01 * m10;
+			double n01 = b00 * m01 + b01 * m11;
+			double n02 = b00 * m02 + b01 * m12 + base.getTranslateX();
+			double n10 = b10 * m00 + b11 * m10;
+			double n11 = b10 * m01 + b11 * m11;
+			double n12 = b10 * m02 + b11 * m12 + base.getTranslateY();
+			m00 = n00; m01 = n01; m02 = n02;
+			m10 = n10; m11 = n11; m12 = n12;
+		}
+		
+		double hw = 0.5 * (subtreeMaxX - subtreeMinX);
+		double hh = 0.5 * (subtreeMaxY - subtreeMinY);
+		double lx = subtreeMinX + hw;
+		double ly = subtreeMinY + hh;
+		double cx = m00 * lx + m01 * ly + m02;
+		double cy = m10 * lx + m11 * ly + m12;
+		double ex = Math.abs(m00) * hw + Math.abs(m01) * hh;
+		double ey = Math.abs(m10) * hw + Math.abs(m11) * hh;
+		
+		float left, top, right, bottom;
+		Rectangle2D.Float cullRect = ctx.cullRect;
+		if (cullRect != null) {
+			left = cullRect.x;
+			top = cullRect.y;
+			right = cullRect.x + cullRect.width;
+			bottom = cullRect.y + cullRect.height;
+		} else {
+			left = 0;
+			top = 0;
+			right = _g.width;
+			bottom = _g.height;
+		}
+		
+		return cx + ex < left || cx - ex > right || cy + ey < top || cy - ey > bottom;
+	}
+	
+	private void updateSubtreeBounds () {
+		validateBounds();
+		
+		float minX = Float.POSITIVE_INFINITY;
+		float minY = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY;
+		if (width > 0 && height > 0) {
+			minX = boundsLeft;
+			minY = boundsTop;
+			maxX = boundsLeft + width;
+			maxY = boundsTop + height;
+		}
+		
+		NestSprite child;
+		for (int i=0; i<childList.size(); i++) {
+			child = childList.get(i);
+			if (child.isDisposed) { continue; }
+			child.validateTransform();
+			if (child.subtreeBoundsDirty) {
+				child.updateSubtreeBounds();
+			}
+			if (child.subtreeMinX > child.subtreeMaxX) { continue; }
+			
+			// axis-aligned bounds of the child's aggregate bounds in this coordinate space,
+			// via the transformed center and half-extents.
+			AffineTransform m = child.localMatrix;
+			double hw = 0.5 * (child.subtreeMaxX - child.subtreeMinX);
+			double hh = 0.5 * (child.subtreeMaxY - child.subtreeMinY);
+			double lx = child.subtreeMinX + hw;
+			double ly = child.subtreeMinY + hh;
+			double cx = m.getScaleX() * lx + m.getShearX() * ly + m.getTranslateX();
+			double cy = m.getShearY() * lx + m.getScaleY() * ly + m.getTranslateY();
+			double ex = Math.abs(m.getScaleX()) * hw + Math.abs(m.getShearX()) * hh;
+			double ey = Math.abs(m.getShearY()) * hw + Math.abs(m.getScaleY()) * hh;
+			
+			minX = Math.min(minX, (float)(cx - ex));
+			minY = Math.min(minY, (float)(cy - ey));
+			maxX = Math.max(maxX, (float)(cx + ex));
+			maxY = Math.max(maxY, (float)(cy + ey));
+		}
+		
+		subtreeMinX = minX;
+		subtreeMinY = minY;
+		subtreeMaxX = maxX;
+		subtreeMaxY = maxY;
+		subtreeBoundsDirty = false;
+	}
+	
+	/**
+	 * Utility method to attach a spatial index to this NestSprite and all descendants,
+	 * adding each to the index at its current position.
+	 */
+	void attachSpatialIndex (SpatialIndex index) {
+		spatialIndex = index;
+		validateTransform();
+		index.update(this);
+		for (NestSprite child : childList) {
+			child.attachSpatialIndex(index);
+		}
+	}
+	
+	/**
+	 * Utility method to remove this NestSprite and all descendants from their spatial index.
+	 */
+	void detachSpatialIndex () {
+		if (spatialIndex == null) { return; }
+		
+		spatialIndex.remove(this);
+		spatialIndex = null;
+		if (childList != null) {
+			for (NestSprite child : childList) {
+				child.detachSpatialIndex();
+			}
+		}
+	}
+	
 	/**
 	 * Send events through the display list,
 	 * starting at NestSpriteContainer and progressing
 	 * down through the display list (capture phase),
 	 * to the front-most NestSprite.
 	 * 
+	 * @param	ctx		Context of the current dispatch.
 	 * @return	Returns true if event is a bounded MouseEvent and
 	 * 			occurred within the bounds of this NestSprite instance.
 	 */
-	boolean processDisplayListEvent (Event evt) {
+	boolean processDisplayListEvent (FrameContext ctx, Event evt) {
+		// disposed during this dispatch, but not yet removed from its parent's child list.
+		if (isDisposed) { return false; }
+		if (ctx.statsEnabled) { countEventVisit(ctx); }
+		
+		// if the NestSpriteContainer has routed this event via its spatial index,
+		// NestSprites that are (or contain) a hit have been stamped with the route serial.
+		boolean routed = spatialIndex != null && spatialIndex.routing;
+		validateMouse();
+		
 		if (handleCaptureEvents) {
 			// while traversing down through the display list,
 			// the event is in the CAPTURE phase.
-			handleDisplayListEvent(evt, hitTest(mousePt));
+			callEventHandlers(ctx, evt, routed ? routeStamp == spatialIndex.routeSerial : hitTest(ctx, mousePt, true, true));
 		}
 		
 		if (evt.isPropagationStopped()) {
@@ -1415,6 +2808,10 @@ public class NestSprite extends EventDispatcher {
 		
 		boolean inChildBounds = false;
 		
+		// events handled only within bounds need not visit subtrees that contain no hit.
+		boolean pruneMisses = evt instanceof MouseEvent &&
+				(evt.type() == MouseEvent.MOUSE_CLICKED || evt.type() == MouseEvent.MOUSE_ENTERED);
+		
 		if (visible && inputChildren) {
 			// propagate down through children (continue CAPTURE phase)
 			// for event dispatching, children are iterated from
@@ -1422,10 +2819,17 @@ public class NestSprite extends EventDispatcher {
 			NestSprite child;
 			int i=childList.size();
 			while (i-- > 0) {
+				child = childList.get(i);
+				if (pruneMisses) {
+					child.validateMouse();
+					if (routed ? child.routeStamp != spatialIndex.routeSerial : !child.subtreeContains(child.mouseX, child.mouseY)) {
+						continue;
+					}
+				}
+				
 				super.setEventPhase(evt, Event.PHASE.CAPTURE);
 				
-				child = childList.get(i);
-				if (child.processDisplayListEvent(evt)) {
+				if (child.processDisplayListEvent(ctx, evt)) {
 					inChildBounds = true;
 				}
 				
@@ -1443,12 +2847,12 @@ public class NestSprite extends EventDispatcher {
 			} else {
 				// TODO: redundant to check bounds here and then immediately again within handleDisplayListEvent().
 				//		 may want to overload handleDisplayListEvent() to accept bounds-already-checked?
-				if (bounds.contains(mousePt)) {
+				if (bounds().contains(mousePt)) {
 					// at the bottom of display list; handle as AT_TARGET event
 					super.setEventPhase(evt, Event.PHASE.AT_TARGET);
 				}
 			}
-			return handleDisplayListEvent(evt, inChildBounds);
+			return callEventHandlers(ctx, evt, inChildBounds);
 		} else {
 			if (inChildBounds) {
 				// allow child events to bubble up past this instance
@@ -1461,6 +2865,34 @@ public class NestSprite extends EventDispatcher {
 		}
 	}
 	
+	/**
+	 * Call handleDisplayListEvent(), timing it if the profiler is timing this frame.
+	 */
+	private boolean callEventHandlers (FrameContext ctx, Event evt, boolean inChildBounds) {
+		NestProfiler prof = ctx.profiler;
+		if (prof == null) {
+			return handleDisplayListEvent(evt, inChildBounds);
+		}
+		
+		long startNanos = System.nanoTime();
+		try {
+			return handleDisplayListEvent(evt, inChildBounds);
+		} finally {
+			prof.record(this, NestProfiler.EVENT, System.nanoTime() - startNanos);
+		}
+	}
+	
+	private void countEventVisit (FrameContext ctx) {
+		ctx.hitTested++;
+		int depth = 0;
+		for (NestSprite ns = parent; ns != null; ns = ns.parent) {
+			depth++;
+		}
+		if (depth > ctx.maxEventDepth) {
+			ctx.maxEventDepth = depth;
+		}
+	}
+	
 	/**
 	 * <p>
 	 * Implementation of PApplet MouseEvent and KeyEvent registration.
@@ -1589,11 +3021,19 @@ public class NestSprite extends EventDispatcher {
 		// to satisfy bounds checks in processDisplayListEvent().
 		// maybe better to design Events and subclasses to have a location property,
 		// default=null, that is checked in processDisplayListEvent() instead of mousePt.
+		// the spatial index routes by actual mouse coords, so bypass it for this event.
+		validateMouse();
 		float currMouseX = mousePt.x;
 		float currMouseY = mousePt.y;
 		mousePt.x = localX;
 		mousePt.y = localY;
-		((NestSpriteContainer)parentSprite).mouseEvent(pMouseEvent);
+		NestSpriteContainer container = (NestSpriteContainer)parentSprite;
+		container.spatialRoutingSuspended = true;
+		try {
+			container.mouseEvent(pMouseEvent);
+		} finally {
+			container.spatialRoutingSuspended = false;
+		}
 		mousePt.x = currMouseX;
 		mousePt.y = currMouseY;
 	}
@@ -1601,53 +3041,384 @@ public class NestSprite extends EventDispatcher {
 	private void init () {
 		childList = new ArrayList<NestSprite>();
 		
-		transform = new AffineTransform();
-		localPt = new Point2D.Float();
-		screenPt = new Point2D.Float();
+		localMatrix = new AffineTransform();
+		worldMatrix = new AffineTransform();
+		worldInverse = new AffineTransform();
+		renderMatrix = new AffineTransform();
+		parentMousePt = new Point2D.Float();
 		mousePt = new Point2D.Float();
+		hitTestPt = new Point2D.Float();
+		overridesUpdate = overridesUpdate(getClass());
+	}
+	
+	/**
+	 * Returns true if <tt>type</tt>, or a superclass below NestSprite, declares <tt>update(PApplet)</tt>.
+	 */
+	private static boolean overridesUpdate (Class<?> type) {
+		synchronized (updateOverrides) {
+			Boolean overrides = updateOverrides.get(type);
+			if (overrides == null) {
+				overrides = Boolean.FALSE;
+				for (Class<?> C = type; C != null && C != NestSprite.class; C = C.getSuperclass()) {
+					try {
+						C.getDeclaredMethod("update", PApplet.class);
+						overrides = Boolean.TRUE;
+						break;
+					} catch (NoSuchMethodException e) {
+						// not declared by this class; try its superclass
+					} catch (SecurityException e) {
+						// can't tell; assume update() does something.
+						overrides = Boolean.TRUE;
+						break;
+					}
+				}
+				updateOverrides.put(type, overrides);
+			}
+			return overrides.booleanValue();
+		}
+	}
+	
+	private void activeChanged () {
+		NestSpriteContainer container = activeSetContainer();
+		if (container != null) {
+			container.updateActiveMembership(this);
+		}
+	}
+	
+	/**
+	 * Returns the NestSpriteContainer at the top of this NestSprite's display list,
+	 * if it has an active set enabled; otherwise, null.
+	 */
+	NestSpriteContainer activeSetContainer () {
+		NestSpriteContainer container = rootContainer();
+		return (container != null && container.activeSetEnabled()) ? container : null;
+	}
+	
+	/**
+	 * Returns the NestSpriteContainer at the top of this NestSprite's display list,
+	 * or null if it is not on one.
+	 */
+	NestSpriteContainer rootContainer () {
+		NestSprite root = this;
+		while (root.parent != null) {
+			root = root.parent;
+		}
+		return (root instanceof NestSpriteContainer) ? (NestSpriteContainer)root : null;
+	}
+	
+	/**
+	 * Returns the FrameContext of the traversal this NestSprite is part of:
+	 * that of the independentUpdate subtree it is in, while the subtree is prerendered on a worker thread,
+	 * or otherwise that of the NestSpriteContainer at the top of its display list; null if not on one.
+	 */
+	FrameContext frameContext () {
+		NestSprite root = this;
+		for (NestSprite ns = this; ns != null; ns = ns.parent) {
+			if (ns.prerenderForked) { return ns.prerenderTask.frame; }
+			root = ns;
+		}
+		return (root instanceof NestSpriteContainer) ? ((NestSpriteContainer)root).frame : null;
 	}
 	
 	private void updateTransforms () throws NoninvertibleTransformException {
+		validateTransform();
+		
 		if (parent == null) { return; }
 		
 		// TODO: account for rotation in all three axes; start with just rotZ.
 		
-		localPt.x = x;
-		localPt.y = y;
-		screenPt.x = screenPt.y = 0;
-		mousePt.x = parent.mouseX;
-		mousePt.y = parent.mouseY;
-		
-		transform.setToIdentity();
-		transform.translate(parent.x, parent.y);
-		transform.scale(parent.scaleX, parent.scaleY);
-		transform.rotate(parent.rotationZ);
-		transform.transform(localPt, screenPt);
-		
-		transform.setToIdentity();
-		transform.translate(x, y);
-		transform.scale(scaleX, scaleY);
-		transform.rotate(rotationZ);
-		transform.inverseTransform(new Point2D.Float(parent.mouseX, parent.mouseY), mousePt);
-		
-		screenX = screenPt.x;
-		screenY = screenPt.y;
+		screenX = (float)worldMatrix.getTranslateX();
+		screenY = (float)worldMatrix.getTranslateY();
+		
+		updateMouse();
+		mouseValidEpoch = mouseEpoch.get();
+	}
+	
+	/**
+	 * Bring mouse coords up to date, assuming the parent's mouse coords are current.
+	 */
+	private void updateMouse () throws NoninvertibleTransformException {
+		// mouse coords depend only on localMatrix and the parent's mouse coords;
+		// skip the inverse transform if neither has changed since last frame.
+		if (mouseLocalVersion == localVersion && parentMousePt.x == parent.mouseX && parentMousePt.y == parent.mouseY) {
+			return;
+		}
+		
+		parentMousePt.x = parent.mouseX;
+		parentMousePt.y = parent.mouseY;
+		localMatrix.inverseTransform(parentMousePt, mousePt);
+		mouseLocalVersion = localVersion;
+		
 		mouseX = mousePt.x;
 		mouseY = mousePt.y;
 	}
 	
-	private void renderChildren () {
+	/**
+	 * Bring mouse coords of this NestSprite, and of its ancestors, up to date.
+	 * NestSprites not visited by the last prerender() pass (e.g. with an active set enabled)
+	 * have their mouse coords calculated on demand.
+	 */
+	void validateMouse () {
+		int epoch = mouseEpoch.get();
+		if (mouseValidEpoch == epoch) { return; }
+		if (parent != null) {
+			parent.validateMouse();
+			try {
+				updateMouse();
+			} catch (NoninvertibleTransformException e) {
+				// leave mouse coords as they were, as when prerender() fails to invert.
+			}
+		}
+		mouseValidEpoch = epoch;
+	}
+	
+	/**
+	 * Bring localMatrix and worldMatrix up to date with this NestSprite's
+	 * current position, scale, and rotation, and with its parent's worldMatrix.
+	 * Assumes the parent's worldMatrix is already valid;
+	 * does no matrix math if neither has changed since the last call.
+	 */
+	void validateTransform () {
+		if (transformDirty || x != cachedX || y != cachedY ||
+				scaleX != cachedScaleX || scaleY != cachedScaleY || rotationZ != cachedRotationZ) {
+			cachedX = x;
+			cachedY = y;
+			cachedScaleX = scaleX;
+			cachedScaleY = scaleY;
+			cachedRotationZ = rotationZ;
+			
+			localMatrix.setToTranslation(x, y);
+			localMatrix.scale(scaleX, scaleY);
+			localMatrix.rotate(rotationZ);
+			
+			transformDirty = false;
+			localVersion++;
+			parentWorldVersion = -1;
+			mouseEpoch.incrementAndGet();
+			
+			if (prerenderForked) {
+				prerenderTask.parentBoundsChanged = true;
+				prerenderTask.parentBitmapsChanged = true;
+			} else if (parent != null) {
+				parent.invalidateSubtreeBounds();
+				invalidateBitmapCaches(parent);
+			}
+		}
+		
+		int pv = (parent != null) ? parent.worldVersion : 0;
+		if (pv != parentWorldVersion) {
+			if (parent != null) {
+				worldMatrix.setTransform(parent.worldMatrix);
+				worldMatrix.concatenate(localMatrix);
+			} else {
+				worldMatrix.setTransform(localMatrix);
+			}
+			parentWorldVersion = pv;
+			worldVersion++;
+		}
+	}
+	
+	/**
+	 * Validate the transforms of all ancestors, from the top of the display list down,
+	 * and then of this NestSprite instance.  Used outside of the prerender() traversal,
+	 * where properties may have changed since the last frame.
+	 */
+	void validateWorldTransform () {
+		if (parent != null) {
+			parent.validateWorldTransform();
+		}
+		validateTransform();
+	}
+	
+	private void validateWorldInverse () {
+		if (worldInverseVersion == worldVersion) { return; }
+		
+		// compose inverse explicitly rather than inverting worldMatrix,
+		// so that a zero scale yields infinite coords rather than an exception.
+		worldInverse.setToRotation(-rotationZ);
+		worldInverse.scale(1/scaleX, 1/scaleY);
+		worldInverse.translate(-x, -y);
+		if (parent != null) {
+			parent.validateWorldInverse();
+			worldInverse.concatenate(parent.worldInverse);
+		}
+		worldInverseVersion = worldVersion;
+	}
+	
+	private void renderChildren (FrameContext ctx) {
 		// for rendering, children are iterated from back of the display list to the front.
-		// TODO: is there a fail-fast way to iterate through childList so i don't have to rewrite this iteration logic multiple times?
-		NestSprite child;
-		for (int i=0; i<childList.size(); i++) {
-			child = childList.get(i);
-			child.render(p);
-			if (i < childList.size() && childList.get(i) != child) {
-				// child moved to different index or removed from childList entirely;
-				// update iterator index to ensure no elements are skipped.
-				i--;
+		// changes to the child list made during draw() are deferred until rendering completes.
+		for (int i=0, n=childList.size(); i<n; i++) {
+			childList.get(i).render(ctx, p);
+		}
+	}
+	
+	
+	
+	/**
+	 * Runs prerender() on an independentUpdate NestSprite, within a ForkJoinPool,
+	 * with its own FrameContext.
+	 */
+	private static class PrerenderTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final NestSprite sprite;
+		final FrameContext frame = new FrameContext();
+		boolean bSuppressUpdateCalls = false;
+		
+		// changes to the ancestors of sprite made while it was prerendered, applied once joined.
+		boolean parentBoundsChanged = false;
+		boolean parentBitmapsChanged = false;
+		boolean parentZOrderChanged = false;
+		
+		PrerenderTask (NestSprite sprite) {
+			this.sprite = sprite;
+		}
+		
+		@Override
+		protected void compute () {
+			try {
+				sprite.prerender(frame, bSuppressUpdateCalls);
+			} catch (NoninvertibleTransformException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		
+		/**
+		 * Apply the changes recorded while prerendering to <tt>parent</tt>, sprite's parent,
+		 * and its ancestors.  Called on the thread that joined this task.
+		 */
+		void applyToParent (NestSprite parent) {
+			if (parentBoundsChanged) {
+				parent.invalidateSubtreeBounds();
+			}
+			if (parentBitmapsChanged) {
+				invalidateBitmapCaches(parent);
+			}
+			if (parentZOrderChanged) {
+				parent.zOrderDirty = true;
+			}
+		}
+	}
+	
+	/**
+	 * update() or draw() behavior set by method name, via {@link NestSprite#setUpdate(Object, String)}
+	 * or {@link NestSprite#setDraw(Object, String)}.  The method is looked up once, and bound to its caller:
+	 * on Java 8 and later, as a generated implementation of UpdateBehavior or DrawBehavior
+	 * that calls the method directly, as a lambda would; otherwise, as a MethodHandle.
+	 * Either way, each call avoids the argument array and access checks of <tt>Method.invoke()</tt>.
+	 */
+	private static class BoundBehavior implements UpdateBehavior, DrawBehavior {
+		private static final MethodType BEHAVIOR_TYPE = MethodType.methodType(void.class, PApplet.class, NestSprite.class);
+		private final MethodHandle handle;
+		
+		private BoundBehavior (MethodHandle handle) {
+			this.handle = handle;
+		}
+		
+		/**
+		 * Look up a public method of <tt>caller</tt> that receives a PApplet and a NestSprite,
+		 * and bind it as an implementation of <tt>behaviorType</tt>.
+		 * 
+		 * @param	behaviorType	UpdateBehavior or DrawBehavior.
+		 * @param	phase			"update" or "draw"; also the name of <tt>behaviorType</tt>'s method.
+		 * @return	<tt>null</tt> if no such method is found.
+		 */
+		static <T> T bind (Object caller, String methodName, Class<T> behaviorType, String phase) {
+			Class<?> C = caller.getClass();
+			try {
+				Method method = C.getMethod(methodName, PApplet.class, NestSprite.class);
+				if (Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+					T behavior = spin(caller, method, behaviorType, phase);
+					if (behavior != null) {
+						return behavior;
+					}
+				} else {
+					// allow public methods of non-public classes, e.g. classes nested within a sketch.
+					method.setAccessible(true);
+				}
+				MethodHandle handle = MethodHandles.lookup().unreflect(method);
+				return behaviorType.cast(new BoundBehavior(handle.bindTo(caller).asType(BEHAVIOR_TYPE)));
+			} catch (NoSuchMethodException e) {
+				System.err.println("No public method "+ methodName +"() found in class "+ C.getName() +".  This NestSprite instance will retain its default "+ phase +"() method.");
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			return null;
+		}
+		
+		/**
+		 * Generate an implementation of <tt>behaviorType</tt> that calls <tt>method</tt> on <tt>caller</tt>,
+		 * via LambdaMetafactory.  LambdaMetafactory is looked up reflectively, as it is not available before Java 8.
+		 * 
+		 * @return	<tt>null</tt> if LambdaMetafactory is not available, or cannot bind <tt>method</tt>.
+		 */
+		private static <T> T spin (Object caller, Method method, Class<T> behaviorType, String phase) {
+			try {
+				Class<?> factory = Class.forName("java.lang.invoke.LambdaMetafactory");
+				Method metafactory = factory.getMethod("metafactory", MethodHandles.Lookup.class, String.class,
+						MethodType.class, MethodType.class, MethodHandle.class, MethodType.class);
+				MethodHandles.Lookup lookup = MethodHandles.lookup();
+				CallSite site = (CallSite)metafactory.invoke(null, lookup, phase,
+						MethodType.methodType(behaviorType, method.getDeclaringClass()),
+						BEHAVIOR_TYPE, lookup.unreflect(method), BEHAVIOR_TYPE);
+				return behaviorType.cast(site.getTarget().invoke(caller));
+			} catch (Throwable t) {
+				return null;
+			}
+		}
+		
+		public void update (PApplet p, NestSprite sprite) {
+			invoke(p, sprite);
+		}
+		
+		public void draw (PApplet p, NestSprite sprite) {
+			invoke(p, sprite);
+		}
+		
+		private void invoke (PApplet p, NestSprite sprite) {
+			try {
+				handle.invokeExact(p, sprite);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new RuntimeException(t);
+			}
+		}
+	}
+	
+	/**
+	 * Per-frame state of an offscreen renderer, as set via {@link NestSprite#setRenderer(PGraphics)}.
+	 * Which NestSprite draws into a renderer last is only known once the frame is drawn,
+	 * so the last NestSprite from the previous frame marks where to composite it;
+	 * if that NestSprite is not drawn this frame, the renderer is composited at the end of the frame.
+	 */
+	static class RenderLayer {
+		final PGraphics renderer;
+		NestSprite compositeAfter = null;
+		NestSprite lastSprite = null;
+		boolean open = false;
+		boolean lastReached = false;
+		boolean supportsUpdatePixels = true;
+		int depth = 0;
+		AffineTransform matrix = IDENTITY_MATRIX;
+		
+		RenderLayer (PGraphics renderer) {
+			this.renderer = renderer;
+		}
+		
+		void close (FrameContext ctx, PApplet p) {
+			renderer.endDraw();
+			if (supportsUpdatePixels) {
+				if (ctx.managedMatrixEnabled && !p.g.is3D()) {
+					// composite within the coordinate space of the enclosing NestSprite, as with the matrix stack.
+					loadMatrix(p.g, ctx.managedMatrix);
+				}
+				p.image(renderer, 0, 0);
 			}
+			open = false;
+			lastReached = false;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -20,10 +20,21 @@
 
 package com.transmote.nest;
 
+import com.transmote.nest.events.Event;
 import com.transmote.nest.events.KeyEvent;
 import com.transmote.nest.events.MouseEvent;
 
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import processing.core.PApplet;
+import processing.core.PMatrix2D;
 
 /**
  * <p>
@@ -49,8 +60,111 @@ import processing.core.PApplet;
  * @example		DisplayList
  */
 public class NestSpriteContainer extends NestSprite {
+	/**
+	 * <p>
+	 * If <tt>true</tt>, the children of every NestSprite on this display list are kept
+	 * sorted by {@link NestSprite#z}, from back (lowest z) to front (highest z).
+	 * Children with equal z retain their relative order.
+	 * </p><p>
+	 * The child list of a NestSprite is re-sorted only on frames when one of its children's z
+	 * has changed, or children have been added or rearranged; when z-sorting is enabled,
+	 * manual rearrangement (e.g. via {@link NestSprite#swapChildren(NestSprite, NestSprite)})
+	 * is overridden by the sort.
+	 * </p><p>
+	 * Defaults to <tt>false</tt>.
+	 * </p>
+	 */
+	public boolean zSortingEnabled = false;
+	
+	// kinds of deferred changes to a child list; see deferMutation().
+	static final int ADD_CHILD = 0;
+	static final int ADD_CHILDREN = 1;
+	static final int REMOVE_CHILD = 2;
+	static final int REMOVE_CHILD_AT = 3;
+	static final int REMOVE_CHILDREN = 4;
+	static final int SET_CHILD_INDEX = 5;
+	static final int SWAP_CHILDREN = 6;
+	static final int CALLBACK = 7;
+	
 	private boolean updateDeprecatedWarned = false;
 	
+	// input events are recycled rather than allocated per event;
+	// a nested dispatch (e.g. triggerMouseEvent() from within a handler) gets a fresh instance.
+	private MouseEvent reusableMouseEvent = null;
+	private KeyEvent reusableKeyEvent = null;
+	private boolean dispatchingMouseEvent = false;
+	private boolean dispatchingKeyEvent = false;
+	
+	private final Point2D.Float worldMousePt = new Point2D.Float();
+	
+	private boolean cullingEnabled = false;
+	private Rectangle2D.Float cullRect = null;
+	
+	private ForkJoinPool updatePool = null;
+	
+	// active-set scheduling: NestSprites on this display list for which isActive() is true,
+	// in the order they became active (null where since removed),
+	// and NestSprites and child lists to revisit on the next prerender() pass.
+	private boolean activeSetEnabled = false;
+	private final ArrayList<NestSprite> activeSprites = new ArrayList<NestSprite>();
+	private boolean activeSpritesRemoved = false;
+	private final ArrayList<NestSprite> pendingPrerenders = new ArrayList<NestSprite>();
+	private final ArrayList<NestSprite> pendingZSorts = new ArrayList<NestSprite>();
+	
+	private long updateBudgetNanos = 0;
+	
+	// changes to child lists made while the display list is being traversed
+	// (during update(), draw(), or event handling), applied in order once the traversal completes.
+	// pendingMutations is also the lock for traversalDepth, as traversals may run concurrently
+	// (parallel update).
+	private volatile int traversalDepth = 0;
+	private final ArrayList<Mutation> pendingMutations = new ArrayList<Mutation>();
+	private boolean drainingMutations = false;
+	// NestSprites given a pending child list or parent by the pending changes; see NestSprite.children().
+	private final ArrayList<NestSprite> projectedSprites = new ArrayList<NestSprite>();
+	
+	// changes queued from other threads via queueAddChild() etc., applied at the start of updateDisplayList().
+	// ConcurrentLinkedQueue is lock-free for any number of producers; the animation thread is the only consumer.
+	// queuedCommandCount trails the queue, and bounds each drain to the commands queued before it started.
+	private final ConcurrentLinkedQueue<Command> queuedCommands = new ConcurrentLinkedQueue<Command>();
+	private final AtomicInteger queuedCommandCount = new AtomicInteger();
+	private int maxCommandsPerFrame = 0;
+	private final ArrayList<NestSprite> commandBatch = new ArrayList<NestSprite>();
+	
+	private final NestTweenEngine tweenEngine = new NestTweenEngine(this);
+	private long lastTweenNanos = 0;
+	
+	// fixed-timestep update
+	private float updateRate = 0;
+	private int maxUpdatesPerFrame = 5;
+	private long lastStepTime = 0;
+	private long stepAccumulator = 0;
+	private int stepCount = 0;
+	private float stepInterpolation = 1.0f;
+	
+	private NestStats stats = null;
+	private NestProfiler profiler = null;
+	
+	// settings and state of the update, render, and event traversals of this display list.
+	final FrameContext frame = new FrameContext();
+	
+	// frame phase listener, and the NestSprite counters at the start of the current update and render phases.
+	private NestFrameListener frameListener = null;
+	private int phaseVisitedBase = 0;
+	private int phaseUpdatedBase = 0;
+	private int phaseDrawnBase = 0;
+	private int phaseCulledBase = 0;
+	
+	private boolean managedMatrixEnabled = false;
+	private final PMatrix2D baseMatrix = new PMatrix2D();
+	private final AffineTransform baseTransform = new AffineTransform();
+	
+	/**
+	 * Set by NestSprite.triggerMouseEvent(), which dispatches an event
+	 * at a location other than the actual mouse location.
+	 */
+	boolean spatialRoutingSuspended = false;
+	
 	/**
 	 * The NestSpriteContainer to be the top of the display list.
 	 * @param 	p	A reference to the PApplet running this Processing sketch.
@@ -85,18 +199,680 @@ public class NestSpriteContainer extends NestSprite {
 	}
 	
 	private void updateDisplayList (boolean bSuppressRender) {
-		screenX = 0;
-		screenY = 0;
-		mouseX = p.mouseX;
-		mouseY = p.mouseY;
+		frame.statsEnabled = (stats != null || frameListener != null);
+		if (profiler != null && !bSuppressRender) {
+			profiler.beginFrame();
+		}
+		frame.profiler = (profiler != null && profiler.sampling()) ? profiler : null;
+		long frameStartNanos = (profiler != null) ? System.nanoTime() : 0;
+		long startNanos = (stats != null) ? System.nanoTime() : 0;
+		long renderStartNanos = startNanos;
+		beginUpdatePhase();
+		applyQueuedCommands();
+		updateMouseLocation();
 		
 		try {
-			prerender(bSuppressRender);
-			if (!bSuppressRender) { render(p); }
+			boolean fixedTimestep = updateRate > 0 && !bSuppressRender;
+			if (fixedTimestep) {
+				prerenderFixedSteps();
+			} else {
+				prerenderDisplayList(bSuppressRender);
+			}
+			endUpdatePhase();
+			if (stats != null) {
+				renderStartNanos = System.nanoTime();
+			}
+			if (!bSuppressRender) {
+				frame.culling = cullingEnabled;
+				frame.cullRect = cullRect;
+				if (fixedTimestep) {
+					frame.updateStep = stepCount;
+					frame.renderInterpolation = stepInterpolation;
+				}
+				boolean managedMatrix = managedMatrixEnabled && !p.g.is3D();
+				if (managedMatrix || (cullingEnabled && !p.g.is3D())) {
+					// NestSprites are drawn relative to the matrix of PApplet.g at this point.
+					captureBaseMatrix();
+					if (cullingEnabled && !baseTransform.isIdentity()) {
+						frame.cullMatrix = baseTransform;
+					}
+				}
+				if (managedMatrix) {
+					frame.managedMatrixEnabled = true;
+					frame.managedMatrix = baseTransform;
+				}
+				beginRenderPhase();
+				beginTraversal();
+				try {
+					render(frame, p);
+					compositeRenderLayers(frame, p);
+				} finally {
+					endTraversal();
+					if (managedMatrix) {
+						NestSprite.loadMatrix(p.g, baseTransform);
+					}
+					frame.culling = false;
+					frame.cullRect = null;
+					frame.cullMatrix = null;
+					frame.managedMatrixEnabled = false;
+					frame.managedMatrix = null;
+					frame.updateStep = 0;
+					frame.renderInterpolation = 1.0f;
+				}
+				endRenderPhase();
+			}
 		} catch (Exception e) {
 			System.out.println("NestSpriteContainer.updateDisplayList Exception:");
 			e.printStackTrace();
 		}
+		
+		if (stats != null) {
+			stats.addTime(renderStartNanos - startNanos, System.nanoTime() - renderStartNanos, 0);
+			if (!bSuppressRender) {
+				stats.endFrame(frame);
+			}
+		}
+		if (profiler != null && !bSuppressRender) {
+			profiler.endFrame(System.nanoTime() - frameStartNanos);
+		}
+	}
+	
+	private void prerenderDisplayList (boolean bSuppressUpdateCalls) throws NoninvertibleTransformException {
+		screenX = 0;
+		screenY = 0;
+		
+		if (++frame.prerenderSerial == 0) { frame.prerenderSerial = 1; }
+		if (!bSuppressUpdateCalls) {
+			frame.updateFrame++;
+			frame.updateTimeNanos = System.nanoTime();
+			frame.updateBudgeted = updateBudgetNanos > 0;
+			frame.updateDeadlineNanos = frame.updateTimeNanos + updateBudgetNanos;
+			advanceTweens();
+		}
+		frame.zSorting = zSortingEnabled;
+		frame.pool = updatePool;
+		beginTraversal();
+		try {
+			if (activeSetEnabled) {
+				prerenderActiveSet(bSuppressUpdateCalls);
+			} else {
+				prerender(frame, bSuppressUpdateCalls);
+			}
+		} finally {
+			frame.pool = null;
+			frame.updateBudgeted = false;
+			endTraversal();
+		}
+	}
+	
+	/**
+	 * update() only active NestSprites, and then prerender() only the subtrees that may have changed:
+	 * those of active NestSprites, and of NestSprites added or invalidated since the last frame.
+	 */
+	private void prerenderActiveSet (boolean bSuppressUpdateCalls) throws NoninvertibleTransformException {
+		validateTransform();
+		
+		NestSprite sprite;
+		if (!bSuppressUpdateCalls) {
+			// NestSprites that become active during this loop are appended, and updated this frame;
+			// those that become inactive are nulled out, and compacted afterward.
+			for (int i=0; i<activeSprites.size(); i++) {
+				sprite = activeSprites.get(i);
+				if (sprite != null && sprite.updateDue(frame)) {
+					sprite.callUpdate(frame);
+				}
+			}
+			compactActiveSprites();
+		}
+		
+		for (int i=0; i<activeSprites.size(); i++) {
+			sprite = activeSprites.get(i);
+			if (sprite != null) {
+				prerenderChangedSubtree(sprite);
+			}
+		}
+		for (int i=0; i<pendingPrerenders.size(); i++) {
+			prerenderChangedSubtree(pendingPrerenders.get(i));
+		}
+		pendingPrerenders.clear();
+		
+		for (int i=0; i<pendingZSorts.size(); i++) {
+			pendingZSorts.get(i).sortChildrenIfDirty(frame);
+		}
+		pendingZSorts.clear();
+	}
+	
+	private void prerenderChangedSubtree (NestSprite sprite) throws NoninvertibleTransformException {
+		if (sprite.prerenderSubtree(this) && sprite.parent != null && sprite.parent.prerenderStamp != frame.prerenderSerial) {
+			// parent not visited this pass; sort its children once all changes are in.
+			pendingZSorts.add(sprite.parent);
+		}
+	}
+	
+	private void updateMouseLocation () {
+		if (mouseX != p.mouseX || mouseY != p.mouseY) {
+			mouseX = p.mouseX;
+			mouseY = p.mouseY;
+			NestSprite.mouseEpoch.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Run as many fixed-length update steps as have come due since the last frame,
+	 * up to maxUpdatesPerFrame, and note how far into the next step this frame falls.
+	 */
+	private void prerenderFixedSteps () throws NoninvertibleTransformException {
+		long stepNanos = (long)(1000000000.0 / updateRate);
+		long now = System.nanoTime();
+		if (lastStepTime == 0) {
+			// first frame; update immediately.
+			stepAccumulator = stepNanos;
+		} else {
+			stepAccumulator += now - lastStepTime;
+		}
+		lastStepTime = now;
+		
+		int steps = 0;
+		try {
+			while (stepAccumulator >= stepNanos && steps < maxUpdatesPerFrame) {
+				if (++stepCount == 0) { stepCount = 1; }
+				frame.updateStep = stepCount;
+				captureStepTransforms(this, stepCount);
+				prerenderDisplayList(false);
+				stepAccumulator -= stepNanos;
+				steps++;
+			}
+		} finally {
+			frame.updateStep = 0;
+		}
+		
+		if (stepAccumulator >= stepNanos) {
+			// too far behind to catch up; skip the remaining steps.
+			stepAccumulator %= stepNanos;
+		}
+		if (steps == 0) {
+			// no step due this frame; update transforms and mouse coordinates only.
+			prerenderDisplayList(true);
+		}
+		stepInterpolation = (float)stepAccumulator / stepNanos;
+	}
+	
+	/**
+	 * Note the transforms of <tt>sprite</tt> and its descendants before update step <tt>step</tt>,
+	 * before any tween or update() in the step runs, so that NestSprites are drawn interpolated
+	 * however they are moved: by their own update(), an ancestor's or a sibling's, or a tween.
+	 */
+	private static void captureStepTransforms (NestSprite sprite, int step) {
+		sprite.capturePrevTransform(step);
+		if (sprite.childList == null) { return; }
+		for (int i=0, n=sprite.childList.size(); i<n; i++) {
+			captureStepTransforms(sprite.childList.get(i), step);
+		}
+	}
+	
+	/**
+	 * Advance tweens by the time since the previous update() pass,
+	 * or by the step length, with a fixed update rate.
+	 */
+	private void advanceTweens () {
+		long now = frame.updateTimeNanos;
+		float elapsedMillis;
+		if (frame.updateStep != 0) {
+			elapsedMillis = 1000 / updateRate;
+		} else {
+			elapsedMillis = (lastTweenNanos == 0) ? 0 : (now - lastTweenNanos) / 1000000f;
+		}
+		lastTweenNanos = now;
+		tweenEngine.advance(elapsedMillis);
+	}
+	
+	private void captureBaseMatrix () {
+		p.g.getMatrix(baseMatrix);
+		baseTransform.setTransform(
+				baseMatrix.m00, baseMatrix.m10, baseMatrix.m01,
+				baseMatrix.m11, baseMatrix.m02, baseMatrix.m12);
+	}
+	
+	/**
+	 * <p>
+	 * Enable or disable the spatial index of this display list.
+	 * </p><p>
+	 * When enabled, NestSpriteContainer maintains an index of the on-screen bounds rects
+	 * of all NestSprites on the display list, updated as NestSprites move.
+	 * Mouse events that are handled only within bounds (e.g. <tt>MOUSE_CLICKED</tt>)
+	 * are then routed only through the branches of the display list that contain a hit,
+	 * and {@link NestSprite#hitTest(Point2D, boolean)} and capture-phase event handling
+	 * no longer test every descendant.
+	 * </p><p>
+	 * This is worthwhile for large display lists with many bounded NestSprites;
+	 * for small display lists, the cost of maintaining the index may outweigh the benefit.
+	 * Defaults to <tt>false</tt>.
+	 * </p>
+	 * 
+	 * @param	enabled		<tt>true</tt> to enable the spatial index.
+	 */
+	public void setSpatialIndexEnabled (boolean enabled) {
+		if (enabled == spatialIndexEnabled()) { return; }
+		
+		if (enabled) {
+			attachSpatialIndex(new SpatialIndex());
+		} else {
+			detachSpatialIndex();
+		}
+	}
+	
+	/**
+	 * Returns <tt>true</tt> if the spatial index of this display list is enabled.
+	 * @see		#setSpatialIndexEnabled(boolean)
+	 */
+	public boolean spatialIndexEnabled () {
+		return spatialIndex != null;
+	}
+	
+	/**
+	 * <p>
+	 * Enable or disable viewport culling for this display list.
+	 * </p><p>
+	 * When enabled, a NestSprite whose bounds rect, together with the bounds rects
+	 * of all its descendants, lies entirely outside the cull rect is not drawn,
+	 * and neither are its descendants.  This relies on bounds rects enclosing
+	 * everything drawn within them; a NestSprite that draws outside of its own bounds rect
+	 * and those of its descendants may be culled while still partially on-screen.
+	 * NestSprites with no bounds rect anywhere in their subtree are never culled.
+	 * </p><p>
+	 * NestSprites drawn into PApplet.g are culled as transformed by the matrix of PApplet.g
+	 * at the time {@link #updateDisplayList()} is called, so a sketch may <tt>translate()</tt>
+	 * or <tt>scale()</tt> to pan or zoom the display list; NestSprites drawn into an offscreen renderer
+	 * (see {@link NestSprite#setRenderer(processing.core.PGraphics)}) are culled in the renderer's own space,
+	 * from its origin.  Culling is not applied when using a 3D renderer.
+	 * Defaults to <tt>false</tt>.
+	 * </p>
+	 * 
+	 * @param	enabled		<tt>true</tt> to enable culling.
+	 * @see		#setCullRect(Rectangle2D.Float)
+	 */
+	public void setCullingEnabled (boolean enabled) {
+		cullingEnabled = enabled;
+	}
+	
+	/**
+	 * Returns <tt>true</tt> if viewport culling is enabled for this display list.
+	 * @see		#setCullingEnabled(boolean)
+	 */
+	public boolean cullingEnabled () {
+		return cullingEnabled;
+	}
+	
+	/**
+	 * Set the rect, in the pixel space of the renderer (i.e. after the matrix of PApplet.g
+	 * at the time {@link #updateDisplayList()} is called), against which
+	 * NestSprites are culled when culling is enabled.
+	 * Pass <tt>null</tt> (the default) to cull against the bounds of each NestSprite's renderer.
+	 * 
+	 * @param	rect	The cull rect, or <tt>null</tt>.
+	 * @see		#setCullingEnabled(boolean)
+	 */
+	public void setCullRect (Rectangle2D.Float rect) {
+		cullRect = rect;
+	}
+	
+	/**
+	 * <p>
+	 * Enable or disable Nest-managed matrices for this display list.
+	 * </p><p>
+	 * By default, each NestSprite pushes its transforms onto the matrix stack of its renderer
+	 * before drawing, and pops them afterward, so the depth of the display list is limited
+	 * by the depth of the renderer's matrix stack (32 in Processing).
+	 * When enabled, Nest instead accumulates each NestSprite's matrix itself, and loads it
+	 * onto the renderer with a single <tt>resetMatrix()</tt>/<tt>applyMatrix()</tt>
+	 * before calling <tt>draw()</tt>; the renderer's matrix stack is not used,
+	 * and the display list may be of any depth.
+	 * </p><p>
+	 * Within <tt>draw()</tt>, the current matrix may be modified as usual,
+	 * but calls to <tt>pushMatrix()</tt> and <tt>popMatrix()</tt> must still be balanced.
+	 * Not applied to 3D renderers.  Defaults to <tt>false</tt>.
+	 * </p>
+	 * 
+	 * @param	enabled		<tt>true</tt> to enable managed matrices.
+	 */
+	public void setManagedMatrixEnabled (boolean enabled) {
+		managedMatrixEnabled = enabled;
+	}
+	
+	/**
+	 * Returns <tt>true</tt> if Nest-managed matrices are enabled for this display list.
+	 * @see		#setManagedMatrixEnabled(boolean)
+	 */
+	public boolean managedMatrixEnabled () {
+		return managedMatrixEnabled;
+	}
+	
+	/**
+	 * <p>
+	 * Enable or disable parallel update of this display list.
+	 * </p><p>
+	 * When enabled, the subtrees of NestSprites marked {@link NestSprite#independentUpdate}
+	 * have their <tt>update()</tt> calls and transform calculations run on a pool of
+	 * worker threads, one per available processor.  The remainder of the display list
+	 * is updated on the calling thread, concurrently with the independent subtrees,
+	 * and all updates complete before <tt>draw()</tt> is called on any NestSprite.
+	 * </p><p>
+	 * Defaults to <tt>false</tt>.
+	 * </p>
+	 * 
+	 * @param	enabled		<tt>true</tt> to enable parallel update.
+	 */
+	public void setParallelUpdateEnabled (boolean enabled) {
+		if (enabled && updatePool == null) {
+			updatePool = new ForkJoinPool();
+		} else if (!enabled && updatePool != null) {
+			updatePool.shutdown();
+			updatePool = null;
+		}
+	}
+	
+	/**
+	 * Returns <tt>true</tt> if parallel update is enabled for this display list.
+	 * @see		#setParallelUpdateEnabled(boolean)
+	 */
+	public boolean parallelUpdateEnabled () {
+		return updatePool != null;
+	}
+	
+	/**
+	 * <p>
+	 * Run <tt>update()</tt> at a fixed rate, independent of the frame rate.
+	 * </p><p>
+	 * Each call to {@link #updateDisplayList()} runs as many <tt>update()</tt> passes
+	 * as have come due since the previous call: none, if the frame rate is higher than
+	 * the update rate, or several, if frames are late.  If more than
+	 * {@link #setMaxUpdatesPerFrame(int)} passes are due, the remainder are skipped,
+	 * and the simulation falls behind real time rather than stalling the frame.
+	 * </p><p>
+	 * Between update passes, NestSprites are drawn with their <tt>x</tt>, <tt>y</tt>,
+	 * <tt>scaleX</tt>, <tt>scaleY</tt>, and <tt>rotationZ</tt> interpolated between
+	 * their values before and after the most recent pass, according to how much time
+	 * has elapsed since it; other properties are drawn as of the most recent pass.
+	 * This applies to every NestSprite on the display list, whether it is moved by its own <tt>update()</tt>,
+	 * by that of another NestSprite, or by a tween; to note the values before each pass,
+	 * the display list is walked once per pass, including when active-set scheduling is enabled.
+	 * NestSprites added during a pass are drawn without interpolation until the next one.
+	 * Bounds, hit tests, and events always use the values after the most recent pass.
+	 * </p><p>
+	 * Pass <tt>0</tt> (the default) to run <tt>update()</tt> once per call to <tt>updateDisplayList()</tt>.
+	 * </p>
+	 * 
+	 * @param	updatesPerSecond	Number of update passes to run per second.
+	 */
+	public void setUpdateRate (float updatesPerSecond) {
+		updateRate = Math.max(0, updatesPerSecond);
+		lastStepTime = 0;
+		stepAccumulator = 0;
+	}
+	
+	/**
+	 * Returns the fixed update rate, in update passes per second,
+	 * or <tt>0</tt> if <tt>update()</tt> runs once per frame.
+	 * @see		#setUpdateRate(float)
+	 */
+	public float updateRate () {
+		return updateRate;
+	}
+	
+	/**
+	 * Set the maximum number of <tt>update()</tt> passes run by a single call to
+	 * {@link #updateDisplayList()} when a fixed update rate is set.  Defaults to <tt>5</tt>.
+	 * @see		#setUpdateRate(float)
+	 */
+	public void setMaxUpdatesPerFrame (int maxUpdates) {
+		maxUpdatesPerFrame = Math.max(1, maxUpdates);
+	}
+	
+	/**
+	 * <p>
+	 * Set the time allowed for each frame's update pass.  Once the budget is spent,
+	 * <tt>update()</tt> calls on NestSprites with a negative {@link NestSprite#updatePriority}
+	 * are deferred to later frames, each for at most as many frames as its priority is below zero;
+	 * other NestSprites are always updated.
+	 * </p><p>
+	 * Pass <tt>0</tt> (the default) for no budget.
+	 * </p>
+	 * 
+	 * @param	millis		Milliseconds per frame allowed for <tt>update()</tt> calls.
+	 */
+	public void setUpdateBudget (float millis) {
+		updateBudgetNanos = (long)(Math.max(0, millis) * 1000000);
+	}
+	
+	/**
+	 * Returns the time allowed for each frame's update pass, in milliseconds, or <tt>0</tt> for no budget.
+	 * @see		#setUpdateBudget(float)
+	 */
+	public float updateBudget () {
+		return updateBudgetNanos / 1000000f;
+	}
+	
+	/**
+	 * <p>
+	 * Enable or disable active-set scheduling for this display list.
+	 * </p><p>
+	 * When enabled, NestSpriteContainer keeps a set of the active NestSprites on its display list
+	 * (those for which {@link NestSprite#isActive()} is <tt>true</tt>), and each frame,
+	 * calls <tt>update()</tt> only on them, and recalculates transforms, bounds, and
+	 * spatial index entries only for them and their descendants, and for NestSprites added
+	 * to the display list since the last frame.  The cost of a frame's update phase is then
+	 * proportional to the number of NestSprites that may have changed, rather than
+	 * to the size of the display list.  Mouse coordinates of other NestSprites are
+	 * calculated on demand.
+	 * </p><p>
+	 * Changes to the properties of a NestSprite made from outside of its own <tt>update()</tt>
+	 * or that of an ancestor (e.g. from an event handler) are not picked up unless
+	 * {@link NestSprite#invalidate()} is called on it.  Active NestSprites are updated in the
+	 * order in which they became active, rather than in display list order; parallel update
+	 * does not apply to <tt>update()</tt> calls.
+	 * </p><p>
+	 * Defaults to <tt>false</tt>.
+	 * </p>
+	 * 
+	 * @param	enabled		<tt>true</tt> to enable active-set scheduling.
+	 */
+	public void setActiveSetEnabled (boolean enabled) {
+		if (enabled == activeSetEnabled) { return; }
+		
+		activeSetEnabled = enabled;
+		if (enabled) {
+			for (NestSprite child : childList) {
+				registerActiveSprites(child);
+			}
+			queuePrerender(this);
+		} else {
+			for (NestSprite sprite : activeSprites) {
+				if (sprite != null) {
+					sprite.activeSlot = -1;
+				}
+			}
+			activeSprites.clear();
+			activeSpritesRemoved = false;
+			pendingPrerenders.clear();
+			pendingZSorts.clear();
+		}
+	}
+	
+	/**
+	 * Returns <tt>true</tt> if active-set scheduling is enabled for this display list.
+	 * @see		#setActiveSetEnabled(boolean)
+	 */
+	public boolean activeSetEnabled () {
+		return activeSetEnabled;
+	}
+	
+	/**
+	 * <p>
+	 * Queue <tt>sprite</tt> to be added as a child of <tt>parent</tt>,
+	 * at the start of the next call to {@link #updateDisplayList()}.
+	 * </p><p>
+	 * The display list may only be changed directly from the animation thread;
+	 * this and the other <tt>queue</tt> methods may be called from any thread,
+	 * e.g. to build a scene from a background loader, and do not block.
+	 * Queued changes are applied in the order they were queued by each thread.
+	 * Consecutive additions to the same parent are applied together, as by {@link NestSprite#addChildren(java.util.Collection)}.
+	 * </p>
+	 * 
+	 * @param	parent	The NestSprite to add <tt>sprite</tt> to; <tt>null</tt> for this NestSpriteContainer.
+	 * @param	sprite	The NestSprite to add.
+	 * @throws	IllegalArgumentException	Thrown if <tt>sprite</tt> is null.
+	 */
+	public void queueAddChild (NestSprite parent, NestSprite sprite) throws IllegalArgumentException {
+		queueCommand(new Command(Command.ADD_CHILD, (parent != null) ? parent : this, sprite, null));
+	}
+	
+	/**
+	 * Queue <tt>sprite</tt> to be removed from the child list of its parent,
+	 * at the start of the next call to {@link #updateDisplayList()}.
+	 * May be called from any thread.
+	 * @throws	IllegalArgumentException	Thrown if <tt>sprite</tt> is null.
+	 * @see		#queueAddChild(NestSprite, NestSprite)
+	 */
+	public void queueRemoveChild (NestSprite sprite) throws IllegalArgumentException {
+		queueCommand(new Command(Command.REMOVE_CHILD, null, sprite, null));
+	}
+	
+	/**
+	 * Queue <tt>command</tt> to run on the animation thread, at the start of the next call to
+	 * {@link #updateDisplayList()}, in order with other queued changes;
+	 * e.g. to set properties of NestSprites from another thread.
+	 * May be called from any thread.
+	 * @throws	IllegalArgumentException	Thrown if <tt>command</tt> is null.
+	 * @see		#queueAddChild(NestSprite, NestSprite)
+	 */
+	public void queueCommand (Runnable command) throws IllegalArgumentException {
+		queueCommand(new Command(Command.RUN, null, null, command));
+	}
+	
+	/**
+	 * Set the maximum number of queued changes applied by a single call to {@link #updateDisplayList()};
+	 * the remainder are applied on subsequent frames.  Pass <tt>0</tt> (the default) to apply all queued changes
+	 * on the next frame.
+	 * @see		#queueAddChild(NestSprite, NestSprite)
+	 */
+	public void setMaxQueuedCommandsPerFrame (int max) {
+		maxCommandsPerFrame = Math.max(0, max);
+	}
+	
+	/**
+	 * Returns the number of changes queued from other threads and not yet applied.
+	 * @see		#queueAddChild(NestSprite, NestSprite)
+	 */
+	public int numQueuedCommands () {
+		return queuedCommandCount.get();
+	}
+	
+	/**
+	 * <p>
+	 * Enable or disable frame statistics for this display list.
+	 * </p><p>
+	 * When enabled, NestSpriteContainer counts the NestSprites visited, updated, drawn, culled,
+	 * and hit-tested each frame, times the update, render, and event phases, and measures
+	 * the memory allocated per frame, keeping the most recent frames in {@link #stats()}.
+	 * Counting adds a small cost to every NestSprite visited; when disabled (the default), none.
+	 * </p>
+	 * 
+	 * @param	enabled		<tt>true</tt> to enable frame statistics.
+	 */
+	public void setStatsEnabled (boolean enabled) {
+		if (enabled && stats == null) {
+			stats = new NestStats(NestStats.DEFAULT_CAPACITY);
+			stats.restart(frame);
+		} else if (!enabled) {
+			stats = null;
+		}
+		frame.statsEnabled = (enabled || frameListener != null);
+	}
+	
+	/**
+	 * Returns <tt>true</tt> if frame statistics are enabled for this display list.
+	 * @see		#setStatsEnabled(boolean)
+	 */
+	public boolean statsEnabled () {
+		return stats != null;
+	}
+	
+	/**
+	 * Returns the frame statistics for this display list, or <tt>null</tt> if they are not enabled.
+	 * @see		#setStatsEnabled(boolean)
+	 */
+	public NestStats stats () {
+		return stats;
+	}
+	
+	/**
+	 * <p>
+	 * Enable or disable profiling of this display list.
+	 * </p><p>
+	 * When enabled, the time spent in <tt>update()</tt>, <tt>draw()</tt>, and event handlers
+	 * is totalled by NestSprite class (and {@link NestSprite#name}) over sampled frames,
+	 * and reported by {@link #profiler()}.  Disabling profiling discards the times recorded.
+	 * Defaults to <tt>false</tt>.
+	 * </p>
+	 * 
+	 * @param	enabled		<tt>true</tt> to enable profiling.
+	 */
+	public void setProfilingEnabled (boolean enabled) {
+		if (enabled && profiler == null) {
+			profiler = new NestProfiler();
+		} else if (!enabled) {
+			profiler = null;
+			frame.profiler = null;
+		}
+	}
+	
+	/**
+	 * Returns <tt>true</tt> if profiling is enabled for this display list.
+	 * @see		#setProfilingEnabled(boolean)
+	 */
+	public boolean profilingEnabled () {
+		return profiler != null;
+	}
+	
+	/**
+	 * Returns the NestProfiler for this display list, or <tt>null</tt> if profiling is not enabled.
+	 * @see		#setProfilingEnabled(boolean)
+	 */
+	public NestProfiler profiler () {
+		return profiler;
+	}
+	
+	/**
+	 * <p>
+	 * Set a listener to be notified at the start and end of each phase of each frame:
+	 * the <tt>update()</tt> pass, the render pass, and the dispatch of each event.
+	 * Pass <tt>null</tt> (the default) to remove the listener.
+	 * </p><p>
+	 * Intended for bridging Nest into profiling and monitoring tools such as Java Flight Recorder;
+	 * see {@link NestFrameListener}.  Without a listener, the cost is a single null check per phase.
+	 * </p>
+	 * 
+	 * @param	listener	The NestFrameListener to notify.
+	 */
+	public void setFrameListener (NestFrameListener listener) {
+		frameListener = listener;
+		frame.statsEnabled = (stats != null || listener != null);
+	}
+	
+	/**
+	 * Returns the NestFrameListener for this display list, or <tt>null</tt> if none is set.
+	 * @see		#setFrameListener(NestFrameListener)
+	 */
+	public NestFrameListener frameListener () {
+		return frameListener;
+	}
+	
+	/**
+	 * Returns the NestTweenEngine that animates NestSprites on this display list.
+	 * Tweens are advanced at the start of each <tt>update()</tt> pass.
+	 */
+	public NestTweenEngine tweenEngine () {
+		return tweenEngine;
 	}
 	
 	/**
@@ -104,6 +880,13 @@ public class NestSpriteContainer extends NestSprite {
 	 * NOTE: not yet tested, nor verified in a profiler.
 	 */
 	public void dispose () {
+		setParallelUpdateEnabled(false);
+		setStatsEnabled(false);
+		setProfilingEnabled(false);
+		setFrameListener(null);
+		tweenEngine.clear();
+		queuedCommands.clear();
+		queuedCommandCount.set(0);
 		super.dispose(true);
 	}
 	
@@ -125,7 +908,23 @@ public class NestSpriteContainer extends NestSprite {
 			updateDisplayList(true);
 		}
 		
-		processDisplayListEvent(new MouseEvent(pEvent));
+		if (dispatchingMouseEvent) {
+			dispatchDisplayListEvent(new MouseEvent(pEvent));
+			return;
+		}
+		
+		if (reusableMouseEvent == null) {
+			reusableMouseEvent = new MouseEvent(pEvent);
+		} else {
+			reusableMouseEvent.recycle(pEvent);
+		}
+		
+		dispatchingMouseEvent = true;
+		try {
+			dispatchDisplayListEvent(reusableMouseEvent);
+		} finally {
+			dispatchingMouseEvent = false;
+		}
 	}
 	
 	/**
@@ -134,7 +933,523 @@ public class NestSpriteContainer extends NestSprite {
 	 * Developers should not call this method directly.
 	 */
 	public void keyEvent (processing.event.KeyEvent pEvent) {
-		processDisplayListEvent(new KeyEvent(pEvent));
+		if (dispatchingKeyEvent) {
+			dispatchDisplayListEvent(new KeyEvent(pEvent));
+			return;
+		}
+		
+		if (reusableKeyEvent == null) {
+			reusableKeyEvent = new KeyEvent(pEvent);
+		} else {
+			reusableKeyEvent.recycle(pEvent);
+		}
+		
+		dispatchingKeyEvent = true;
+		try {
+			dispatchDisplayListEvent(reusableKeyEvent);
+		} finally {
+			dispatchingKeyEvent = false;
+		}
+	}
+	
+	private void dispatchDisplayListEvent (Event evt) {
+		NestFrameListener listener = frameListener;
+		frame.statsEnabled = (stats != null || listener != null);
+		frame.profiler = (profiler != null && profiler.sampling()) ? profiler : null;
+		long startNanos = 0;
+		if (stats != null) {
+			stats.countEvent();
+			startNanos = System.nanoTime();
+		}
+		int hitTestedBase = frame.hitTested;
+		if (listener != null) {
+			listener.beginEvent(this, evt);
+		}
+		
+		beginTraversal();
+		try {
+			routeDisplayListEvent(evt);
+		} finally {
+			endTraversal();
+			if (stats != null) {
+				stats.addTime(0, 0, System.nanoTime() - startNanos);
+			}
+		}
+		
+		if (listener != null) {
+			listener.endEvent(this, evt, frame.hitTested - hitTestedBase);
+		}
+	}
+	
+	private void routeDisplayListEvent (Event evt) {
+		if (spatialIndex == null) {
+			processDisplayListEvent(frame, evt);
+			return;
+		}
+		
+		boolean wasRouting = spatialIndex.routing;
+		if (spatialRoutingSuspended) {
+			spatialIndex.routing = false;
+		} else {
+			// mouseX/Y are in the local space of this NestSpriteContainer;
+			// the spatial index is in world space.
+			worldMousePt.x = mouseX;
+			worldMousePt.y = mouseY;
+			worldMatrix.transform(worldMousePt, worldMousePt);
+			spatialIndex.route(frame, worldMousePt.x, worldMousePt.y);
+		}
+		
+		try {
+			processDisplayListEvent(frame, evt);
+		} finally {
+			spatialIndex.routing = wasRouting;
+		}
+	}
+	
+	private void queueCommand (Command command) {
+		queuedCommands.offer(command);
+		queuedCommandCount.incrementAndGet();
+	}
+	
+	/**
+	 * Apply changes queued from other threads, in order, up to maxCommandsPerFrame.
+	 * Runs of additions to the same parent are batched into a single addChildren() call.
+	 */
+	private void applyQueuedCommands () {
+		int n = queuedCommandCount.get();
+		if (n == 0) { return; }
+		if (maxCommandsPerFrame > 0) {
+			n = Math.min(n, maxCommandsPerFrame);
+		}
+		
+		Command command;
+		NestSprite batchParent = null;
+		for (int i=0; i<n; i++) {
+			command = queuedCommands.poll();
+			if (command.op != Command.ADD_CHILD || command.parent != batchParent) {
+				applyCommandBatch(batchParent);
+				batchParent = null;
+			}
+			try {
+				switch (command.op) {
+				case Command.ADD_CHILD:
+					if (command.parent.isDisposed() || command.sprite.isDisposed()) { break; }
+					batchParent = command.parent;
+					commandBatch.add(command.sprite);
+					break;
+				case Command.REMOVE_CHILD:
+					if (command.sprite.parent != null) {
+						command.sprite.parent.removeChild(command.sprite);
+					}
+					break;
+				case Command.RUN:
+					command.runnable.run();
+					break;
+				}
+			} catch (Exception e) {
+				System.out.println("NestSpriteContainer: Exception applying queued command:");
+				e.printStackTrace();
+			}
+		}
+		applyCommandBatch(batchParent);
+		queuedCommandCount.addAndGet(-n);
+	}
+	
+	private void applyCommandBatch (NestSprite parent) {
+		if (commandBatch.isEmpty()) { return; }
+		try {
+			if (commandBatch.size() == 1) {
+				parent.addChild(commandBatch.get(0));
+			} else {
+				parent.addChildren(commandBatch);
+			}
+		} catch (Exception e) {
+			System.out.println("NestSpriteContainer: Exception applying queued command:");
+			e.printStackTrace();
+		} finally {
+			commandBatch.clear();
+		}
+	}
+	
+	private void beginUpdatePhase () {
+		NestFrameListener listener = frameListener;
+		if (listener == null) { return; }
+		phaseVisitedBase = frame.visited;
+		phaseUpdatedBase = frame.updated;
+		listener.beginUpdate(this);
+	}
+	
+	private void endUpdatePhase () {
+		NestFrameListener listener = frameListener;
+		if (listener == null) { return; }
+		listener.endUpdate(this, frame.visited - phaseVisitedBase, frame.updated - phaseUpdatedBase);
+	}
+	
+	private void beginRenderPhase () {
+		NestFrameListener listener = frameListener;
+		if (listener == null) { return; }
+		phaseDrawnBase = frame.drawn;
+		phaseCulledBase = frame.culled;
+		listener.beginRender(this);
+	}
+	
+	private void endRenderPhase () {
+		NestFrameListener listener = frameListener;
+		if (listener == null) { return; }
+		listener.endRender(this, frame.drawn - phaseDrawnBase, frame.culled - phaseCulledBase);
+	}
+	
+	/**
+	 * Add <tt>sprite</tt> to, or remove it from, the active set, according to <tt>isActive()</tt>.
+	 */
+	void updateActiveMembership (NestSprite sprite) {
+		boolean active = sprite.isActive() && !sprite.isDisposed();
+		if (active && sprite.activeSlot < 0) {
+			sprite.activeSlot = activeSprites.size();
+			activeSprites.add(sprite);
+		} else if (!active && sprite.activeSlot >= 0) {
+			activeSprites.set(sprite.activeSlot, null);
+			sprite.activeSlot = -1;
+			activeSpritesRemoved = true;
+		}
+	}
+	
+	/**
+	 * Add active NestSprites in the subtree of <tt>sprite</tt> to the active set.
+	 */
+	void registerActiveSprites (NestSprite sprite) {
+		updateActiveMembership(sprite);
+		if (sprite.childList == null) { return; }
+		for (int i=0; i<sprite.childList.size(); i++) {
+			registerActiveSprites(sprite.childList.get(i));
+		}
+	}
+	
+	/**
+	 * Remove all NestSprites in the subtree of <tt>sprite</tt> from the active set.
+	 */
+	void unregisterActiveSprites (NestSprite sprite) {
+		if (sprite.activeSlot >= 0) {
+			activeSprites.set(sprite.activeSlot, null);
+			sprite.activeSlot = -1;
+			activeSpritesRemoved = true;
+		}
+		if (sprite.childList == null) { return; }
+		for (int i=0; i<sprite.childList.size(); i++) {
+			unregisterActiveSprites(sprite.childList.get(i));
+		}
+	}
+	
+	/**
+	 * Revisit <tt>sprite</tt> and its descendants on the next prerender() pass.
+	 */
+	void queuePrerender (NestSprite sprite) {
+		pendingPrerenders.add(sprite);
+	}
+	
+	/**
+	 * Returns <tt>true</tt> while this display list is being traversed,
+	 * i.e. while changes to its child lists are deferred.
+	 */
+	boolean traversing () {
+		return traversalDepth > 0;
+	}
+	
+	/**
+	 * Queue a change to the child list of <tt>parent</tt>, if this display list is being traversed,
+	 * or its deferred changes are being applied.
+	 * Changes are applied in the order they were made, once the outermost traversal completes;
+	 * changes made while they are applied (e.g. by an <tt>ADDED_TO_STAGE</tt> handler) are queued behind them.
+	 * Until all are applied, they are made to the pending child lists of the NestSprites involved,
+	 * so that child list queries reflect them.  Any argument validation must happen,
+	 * against the pending child lists, before the change is queued.
+	 * 
+	 * @return	<tt>true</tt> if the change was queued;
+	 * 			<tt>false</tt> if the caller should make it immediately.
+	 */
+	boolean deferMutation (int op, NestSprite parent, NestSprite sprite, NestSprite sprite2, int index, NestSprite[] sprites) {
+		synchronized (pendingMutations) {
+			if (traversalDepth == 0 && !drainingMutations) { return false; }
+			Mutation mutation = new Mutation(op, parent, sprite, sprite2, index, sprites, null);
+			pendingMutations.add(mutation);
+			mutation.project(projectedSprites);
+			return true;
+		}
+	}
+	
+	/**
+	 * Queue <tt>callback</tt> to run after the changes already deferred, if this display list is being traversed,
+	 * or its deferred changes are being applied;
+	 * e.g. to finish with a NestSprite once its deferred removal has been applied.
+	 * 
+	 * @return	<tt>true</tt> if the callback was queued;
+	 * 			<tt>false</tt> if the caller should run it immediately.
+	 */
+	boolean deferCallback (Runnable callback) {
+		synchronized (pendingMutations) {
+			if (traversalDepth == 0 && !drainingMutations) { return false; }
+			pendingMutations.add(new Mutation(CALLBACK, this, null, null, 0, null, callback));
+			return true;
+		}
+	}
+	
+	private void beginTraversal () {
+		synchronized (pendingMutations) {
+			traversalDepth++;
+		}
+	}
+	
+	private void endTraversal () {
+		synchronized (pendingMutations) {
+			if (--traversalDepth > 0 || drainingMutations || pendingMutations.isEmpty()) { return; }
+			drainingMutations = true;
+		}
+		
+		// apply outside of the lock, as the changes may call out to event handlers.
+		// changes made by those handlers are deferred, appended, and applied by this same loop;
+		// until the loop completes, child list queries see all changes queued, applied or not.
+		try {
+			Mutation mutation;
+			for (int i=0; ; i++) {
+				synchronized (pendingMutations) {
+					if (i >= pendingMutations.size()) {
+						pendingMutations.clear();
+						break;
+					}
+					mutation = pendingMutations.get(i);
+				}
+				frame.zSorting = zSortingEnabled;
+				mutation.apply(frame);
+			}
+		} finally {
+			synchronized (pendingMutations) {
+				pendingMutations.clear();
+				NestSprite sprite;
+				for (int i=0; i<projectedSprites.size(); i++) {
+					sprite = projectedSprites.get(i);
+					sprite.pendingChildList = null;
+					sprite.pendingParent = null;
+					sprite.parentPending = false;
+				}
+				projectedSprites.clear();
+				drainingMutations = false;
+			}
+		}
+	}
+	
+	private void compactActiveSprites () {
+		if (!activeSpritesRemoved) { return; }
+		
+		int n = 0;
+		NestSprite sprite;
+		for (int i=0; i<activeSprites.size(); i++) {
+			sprite = activeSprites.get(i);
+			if (sprite != null) {
+				sprite.activeSlot = n;
+				activeSprites.set(n++, sprite);
+			}
+		}
+		while (activeSprites.size() > n) {
+			activeSprites.remove(activeSprites.size() - 1);
+		}
+		activeSpritesRemoved = false;
+	}
+	
+	/**
+	 * A change to a child list, or a callback, deferred until the end of a traversal of the display list.
+	 */
+	private static class Mutation {
+		final int op;
+		final NestSprite parent;
+		final NestSprite sprite;
+		final NestSprite sprite2;
+		final int index;
+		final NestSprite[] sprites;
+		final Runnable callback;
+		
+		Mutation (int op, NestSprite parent, NestSprite sprite, NestSprite sprite2, int index, NestSprite[] sprites, Runnable callback) {
+			this.op = op;
+			this.parent = parent;
+			this.sprite = sprite;
+			this.sprite2 = sprite2;
+			this.index = index;
+			this.sprites = sprites;
+			this.callback = callback;
+		}
+		
+		/**
+		 * Make the change, skipping it if earlier changes have made it moot
+		 * (e.g. the parent was disposed, or the child already removed).
+		 * Membership is checked against the child lists as they are now, not their pending child lists.
+		 */
+		void apply (FrameContext ctx) {
+			if (op != CALLBACK && parent.isDisposed()) { return; }
+			
+			try {
+				switch (op) {
+				case ADD_CHILD:
+					if (sprite.isDisposed()) { return; }
+					parent.applyAddChild(index, sprite);
+					prerenderAdded(ctx, sprite);
+					break;
+				case ADD_CHILDREN:
+					ArrayList<NestSprite> added = new ArrayList<NestSprite>(sprites.length);
+					for (int i=0; i<sprites.length; i++) {
+						if (!sprites[i].isDisposed()) {
+							added.add(sprites[i]);
+						}
+					}
+					parent.applyAddChildren(added);
+					for (int i=0; i<added.size(); i++) {
+						prerenderAdded(ctx, added.get(i));
+					}
+					break;
+				case REMOVE_CHILD:
+				case REMOVE_CHILD_AT:
+					if (parent.hasChild(sprite)) {
+						parent.applyRemoveChild(sprite);
+					}
+					break;
+				case REMOVE_CHILDREN:
+					for (int i=0; i<sprites.length; i++) {
+						if (parent.hasChild(sprites[i])) {
+							parent.applyRemoveChild(sprites[i]);
+						}
+					}
+					break;
+				case SET_CHILD_INDEX:
+					if (parent.hasChild(sprite)) {
+						parent.applySetChildIndex(Math.min(index, parent.childList.size() - 1), sprite);
+					}
+					break;
+				case SWAP_CHILDREN:
+					if (parent.hasChild(sprite) && parent.hasChild(sprite2)) {
+						parent.applySwapChildren(sprite, sprite2);
+					}
+					break;
+				case CALLBACK:
+					callback.run();
+					break;
+				}
+			} catch (Exception e) {
+				System.out.println("NestSpriteContainer: Exception applying deferred display list change:");
+				e.printStackTrace();
+			}
+		}
+		
+		/**
+		 * Make the change to the pending child lists of the NestSprites involved, as apply() will make it
+		 * to their child lists, and note each NestSprite given a pending child list or parent in <tt>projected</tt>.
+		 */
+		void project (ArrayList<NestSprite> projected) {
+			ArrayList<NestSprite> children;
+			switch (op) {
+			case ADD_CHILD:
+				projectAdd(index, sprite, projected);
+				break;
+			case ADD_CHILDREN:
+				for (int i=0; i<sprites.length; i++) {
+					projectAdd(Integer.MAX_VALUE, sprites[i], projected);
+				}
+				break;
+			case REMOVE_CHILD:
+			case REMOVE_CHILD_AT:
+				projectRemove(sprite, projected);
+				break;
+			case REMOVE_CHILDREN:
+				for (int i=0; i<sprites.length; i++) {
+					projectRemove(sprites[i], projected);
+				}
+				break;
+			case SET_CHILD_INDEX:
+				children = pendingChildList(parent, projected);
+				children.remove(sprite);
+				children.add(Math.min(index, children.size()), sprite);
+				break;
+			case SWAP_CHILDREN:
+				children = pendingChildList(parent, projected);
+				int index1 = children.indexOf(sprite);
+				int index2 = children.indexOf(sprite2);
+				children.set(index1, sprite2);
+				children.set(index2, sprite);
+				break;
+			}
+		}
+		
+		private void projectAdd (int index, NestSprite child, ArrayList<NestSprite> projected) {
+			if (child == parent) { return; }
+			NestSprite oldParent = child.parentPending ? child.pendingParent : child.parent;
+			// an existing child keeps its place.
+			if (oldParent == parent) { return; }
+			
+			if (oldParent != null) {
+				pendingChildList(oldParent, projected).remove(child);
+			}
+			ArrayList<NestSprite> children = pendingChildList(parent, projected);
+			children.add(Math.min(index, children.size()), child);
+			setPendingParent(child, parent, projected);
+		}
+		
+		private void projectRemove (NestSprite child, ArrayList<NestSprite> projected) {
+			NestSprite oldParent = child.parentPending ? child.pendingParent : child.parent;
+			if (oldParent != parent) { return; }
+			
+			pendingChildList(parent, projected).remove(child);
+			setPendingParent(child, null, projected);
+		}
+		
+		private static ArrayList<NestSprite> pendingChildList (NestSprite sprite, ArrayList<NestSprite> projected) {
+			if (sprite.pendingChildList == null) {
+				sprite.pendingChildList = (sprite.childList != null) ? new ArrayList<NestSprite>(sprite.childList) : new ArrayList<NestSprite>();
+				projected.add(sprite);
+			}
+			return sprite.pendingChildList;
+		}
+		
+		private static void setPendingParent (NestSprite sprite, NestSprite parent, ArrayList<NestSprite> projected) {
+			if (!sprite.parentPending) {
+				sprite.parentPending = true;
+				projected.add(sprite);
+			}
+			sprite.pendingParent = parent;
+		}
+		
+		/**
+		 * Bring a NestSprite added after the update() pass up to date,
+		 * so that it is drawn correctly on the frame it was added.
+		 */
+		private void prerenderAdded (FrameContext ctx, NestSprite sprite) throws NoninvertibleTransformException {
+			if (sprite.parent != parent) { return; }
+			sprite.prerender(ctx, true);
+			parent.sortChildrenIfDirty(ctx);
+		}
+	}
+	
+	/**
+	 * A change queued from another thread, applied at the start of updateDisplayList().
+	 */
+	private static class Command {
+		static final int ADD_CHILD = 0;
+		static final int REMOVE_CHILD = 1;
+		static final int RUN = 2;
+		
+		final int op;
+		final NestSprite parent;
+		final NestSprite sprite;
+		final Runnable runnable;
+		
+		Command (int op, NestSprite parent, NestSprite sprite, Runnable runnable) {
+			if (op == RUN && runnable == null) {
+				throw new IllegalArgumentException("@command must not be null.");
+			}
+			if (op != RUN && sprite == null) {
+				throw new IllegalArgumentException("@sprite must not be null.");
+			}
+			this.op = op;
+			this.parent = parent;
+			this.sprite = sprite;
+			this.runnable = runnable;
+		}
 	}
 	
 	private void init () {
@@ -0,0 +1,199 @@
+/*
+ * This file is part of Nest.
+ * Nest - http://transmote.com/nest/ is a
+ * derivative of Processing - http://processing.org/
+ * Copyright (C) 2011, Eric Socolofsky
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.transmote.nest;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+
+/**
+ * <p>
+ * Pool of reusable NestSprites of one class, for display lists that add and remove
+ * many short-lived NestSprites (e.g. particles).  Acquiring a NestSprite from the pool
+ * instead of constructing one, and releasing it to the pool instead of calling
+ * <tt>dispose()</tt>, avoids allocating a new NestSprite and its child list, matrices,
+ * and points each time.
+ * </p><p>
+ * e.g.:
+ * <pre>
+ * NestSpritePool&lt;Particle&gt; particles = new NestSpritePool&lt;Particle&gt;(Particle.class);
+ * // ...
+ * Particle particle = particles.acquire();
+ * spriteContainer.addChild(particle);
+ * // ...
+ * particles.release(particle);
+ * </pre>
+ * </p><p>
+ * NestSprites are created via their class's public no-argument constructor;
+ * to create them otherwise, subclass NestSpritePool and override {@link #create()}.
+ * Released NestSprites are reset via {@link NestSprite#reset()}, which subclasses
+ * of NestSprite with state of their own should override.
+ * </p><p>
+ * NestSpritePool is not thread-safe; use it from the thread that updates the display list.
+ * </p>
+ *
+ * @author		Eric Socolofsky
+ */
+public class NestSpritePool<T extends NestSprite> {
+	private final Class<T> type;
+	private final int maxSize;
+	private final ArrayList<T> available;
+	
+	
+	/**
+	 * Create a pool of NestSprites of class <tt>type</tt>, with no limit on the number kept for reuse.
+	 * 
+	 * @param	type	Class of the NestSprites in the pool.
+	 */
+	public NestSpritePool (Class<T> type) {
+		this(type, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Create a pool of NestSprites of class <tt>type</tt>.
+	 * 
+	 * @param	type	Class of the NestSprites in the pool.
+	 * @param	maxSize	Maximum number of released NestSprites to keep for reuse;
+	 * 					NestSprites released beyond this number are disposed.
+	 */
+	public NestSpritePool (Class<T> type, int maxSize) {
+		this.type = type;
+		this.maxSize = maxSize;
+		available = new ArrayList<T>(Math.min(maxSize, 64));
+	}
+	
+	/**
+	 * Returns a NestSprite from the pool, or a new one if the pool is empty.
+	 * The returned NestSprite is not on any display list.
+	 */
+	public T acquire () {
+		int n = available.size();
+		if (n > 0) {
+			T sprite = available.remove(n - 1);
+			sprite.pooled = false;
+			return sprite;
+		}
+		return create();
+	}
+	
+	/**
+	 * <p>
+	 * Return a NestSprite to the pool, for reuse by a later <tt>acquire()</tt>.
+	 * Removes it from its parent, cancels its tweens, and resets it via {@link NestSprite#reset()};
+	 * its children are removed, but not released.
+	 * </p><p>
+	 * When called during <tt>update()</tt>, <tt>draw()</tt>, or event handling, the NestSprite
+	 * stays on the display list until the current pass over it completes, as with
+	 * {@link NestSprite#removeChild(NestSprite)}; it is reset and made available for reuse only then.
+	 * </p><p>
+	 * Releasing a NestSprite that is already in the pool, or has been disposed, has no effect.
+	 * The NestSprite should not be used after it is released.
+	 * </p>
+	 * 
+	 * @param	sprite	The NestSprite to return to the pool.
+	 */
+	public void release (final T sprite) {
+		if (sprite == null || sprite.pooled || sprite.isDisposed()) { return; }
+		
+		NestSpriteContainer container = sprite.rootContainer();
+		if (container != null) {
+			container.tweenEngine().cancel(sprite);
+		}
+		// parent() includes additions and removals still pending.
+		NestSprite parent = sprite.parent();
+		if (parent != null) {
+			parent.removeChild(sprite);
+		}
+		
+		// marked now, so that it is not released twice while its removal is deferred.
+		sprite.pooled = true;
+		if (container != null && container.deferCallback(new Runnable() {
+			public void run () {
+				recycle(sprite);
+			}
+		})) {
+			return;
+		}
+		recycle(sprite);
+	}
+	
+	/**
+	 * Create NestSprites until at least <tt>count</tt> are available for reuse,
+	 * e.g. during setup, to avoid allocating them during animation.
+	 */
+	public void prefill (int count) {
+		count = Math.min(count, maxSize);
+		available.ensureCapacity(count);
+		T sprite;
+		while (available.size() < count) {
+			sprite = create();
+			sprite.pooled = true;
+			available.add(sprite);
+		}
+	}
+	
+	/**
+	 * Returns the number of NestSprites available for reuse.
+	 */
+	public int size () {
+		return available.size();
+	}
+	
+	/**
+	 * Dispose of all NestSprites available for reuse.
+	 */
+	public void clear () {
+		for (int i=0; i<available.size(); i++) {
+			available.get(i).dispose();
+		}
+		available.clear();
+	}
+	
+	/**
+	 * Reset a released NestSprite, once it is off the display list, and keep it for reuse;
+	 * or dispose of it, if the pool is full.
+	 */
+	private void recycle (T sprite) {
+		if (sprite.isDisposed()) { return; }
+		
+		if (available.size() >= maxSize) {
+			sprite.pooled = false;
+			sprite.dispose();
+			return;
+		}
+		sprite.reset();
+		available.add(sprite);
+	}
+	
+	/**
+	 * Create a new NestSprite for the pool.  By default, calls the public no-argument
+	 * constructor of the pool's class; override to construct NestSprites otherwise.
+	 */
+	protected T create () {
+		try {
+			return type.getDeclaredConstructor().newInstance();
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException("NestSpritePool could not create an instance of "+ type.getName() +"; its constructor threw an exception.", e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("NestSpritePool could not create an instance of "+ type.getName() +"; it must have a public no-argument constructor, or NestSpritePool.create() must be overridden.", e);
+		}
+	}
+}
@@ -0,0 +1,317 @@
+/*
+ * This file is part of Nest.
+ * Nest - http://transmote.com/nest/ is a
+ * derivative of Processing - http://processing.org/
+ * Copyright (C) 2011, Eric Socolofsky
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.transmote.nest;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * <p>
+ * Per-frame counters and timings for a display list, kept for the most recent frames
+ * in a ring buffer.  Enabled via {@link NestSpriteContainer#setStatsEnabled(boolean)},
+ * and accessed via {@link NestSpriteContainer#stats()}.
+ * </p><p>
+ * e.g.:
+ * <pre>
+ * NestStats.Frame frame = spriteContainer.stats().frame(0);
+ * println(frame.spritesDrawn +" drawn in "+ frame.renderNanos / 1000000f +"ms");
+ * </pre>
+ * </p><p>
+ * A frame runs from the end of one call to {@link NestSpriteContainer#updateDisplayList()}
+ * to the end of the next, and so includes the events dispatched between them.
+ * Each NestSpriteContainer counts separately; with parallel update enabled,
+ * each independentUpdate subtree is counted separately, and added in once it completes.
+ * </p><p>
+ * Frame records are reused as the ring buffer wraps; copy any values to be kept.
+ * </p>
+ *
+ * @author		Eric Socolofsky
+ */
+public class NestStats {
+	/**
+	 * Counters and timings for a single frame.
+	 */
+	public static class Frame {
+		/** Serial number of this frame, counting from 1 when stats were enabled. */
+		public long frame;
+		/** NestSprites visited by the <tt>update()</tt> pass (<tt>prerender()</tt>), including those not updated. */
+		public int spritesVisited;
+		/** NestSprites whose <tt>update()</tt> was called. */
+		public int spritesUpdated;
+		/** NestSprites whose <tt>draw()</tt> was called. */
+		public int spritesDrawn;
+		/** NestSprites, with their subtrees, skipped by culling. */
+		public int spritesCulled;
+		/** NestSprites tested against a point, by event dispatch or <tt>hitTest()</tt>. */
+		public int spritesHitTested;
+		/** Events dispatched through the display list. */
+		public int events;
+		/** Greatest depth in the display list visited while dispatching an event (the NestSpriteContainer is depth 0). */
+		public int maxEventDepth;
+		/** Time spent applying queued changes and running the <tt>update()</tt> pass, in nanoseconds. */
+		public long updateNanos;
+		/** Time spent drawing the display list, in nanoseconds. */
+		public long renderNanos;
+		/** Time spent dispatching events, in nanoseconds. */
+		public long eventNanos;
+		/** Bytes allocated by the thread calling <tt>updateDisplayList()</tt>, or <tt>-1</tt> if not supported by the JVM. */
+		public long allocatedBytes;
+		
+		void reset () {
+			frame = 0;
+			spritesVisited = 0;
+			spritesUpdated = 0;
+			spritesDrawn = 0;
+			spritesCulled = 0;
+			spritesHitTested = 0;
+			events = 0;
+			maxEventDepth = 0;
+			updateNanos = 0;
+			renderNanos = 0;
+			eventNanos = 0;
+			allocatedBytes = 0;
+		}
+		
+		void copy (Frame from) {
+			frame = from.frame;
+			spritesVisited = from.spritesVisited;
+			spritesUpdated = from.spritesUpdated;
+			spritesDrawn = from.spritesDrawn;
+			spritesCulled = from.spritesCulled;
+			spritesHitTested = from.spritesHitTested;
+			events = from.events;
+			maxEventDepth = from.maxEventDepth;
+			updateNanos = from.updateNanos;
+			renderNanos = from.renderNanos;
+			eventNanos = from.eventNanos;
+			allocatedBytes = from.allocatedBytes;
+		}
+		
+		public String toString () {
+			return "frame "+ frame +": "+
+					spritesVisited +" visited, "+ spritesUpdated +" updated, "+
+					spritesDrawn +" drawn, "+ spritesCulled +" culled, "+ spritesHitTested +" hit-tested; "+
+					events +" events (max depth "+ maxEventDepth +"); "+
+					"update "+ (updateNanos / 1000) +"us, render "+ (renderNanos / 1000) +"us, events "+ (eventNanos / 1000) +"us; "+
+					allocatedBytes +" bytes allocated";
+		}
+	}
+	
+	public static final int DEFAULT_CAPACITY = 120;
+	
+	// per-thread allocation counter, where the JVM provides one (e.g. HotSpot).
+	private static final com.sun.management.ThreadMXBean allocationCounter = allocationCounter();
+	
+	private Frame[] frames;
+	private int head = 0;
+	private int count = 0;
+	private long frameSerial = 0;
+	
+	// counters for the frame in progress, collected from the NestSpriteContainer's FrameContext at the end of the frame.
+	private final Frame current = new Frame();
+	private long frameStartAllocated = -1;
+	private Thread frameThread = null;
+	
+	NestStats (int capacity) {
+		setCapacity(capacity);
+	}
+	
+	/**
+	 * Set the number of frames kept.  Clears all recorded frames.
+	 * @throws	IllegalArgumentException	Thrown if <tt>capacity</tt> is less than <tt>1</tt>.
+	 */
+	public synchronized void setCapacity (int capacity) throws IllegalArgumentException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("@capacity must be at least 1.");
+		}
+		frames = new Frame[capacity];
+		for (int i=0; i<capacity; i++) {
+			frames[i] = new Frame();
+		}
+		head = 0;
+		count = 0;
+	}
+	
+	/**
+	 * Returns the number of frames kept.
+	 */
+	public synchronized int capacity () {
+		return frames.length;
+	}
+	
+	/**
+	 * Returns the number of frames recorded, up to {@link #capacity()}.
+	 */
+	public synchronized int numFrames () {
+		return count;
+	}
+	
+	/**
+	 * Returns the record of a recent frame.
+	 * @param	framesAgo	<tt>0</tt> for the most recent frame, <tt>1</tt> for the one before it, etc.
+	 * @throws	IndexOutOfBoundsException	Thrown if <tt>framesAgo</tt> is not less than {@link #numFrames()}.
+	 */
+	public synchronized Frame frame (int framesAgo) throws IndexOutOfBoundsException {
+		if (framesAgo < 0 || framesAgo >= count) {
+			throw new IndexOutOfBoundsException("Frame "+ framesAgo +" is out of range "+ count +" for NestStats.");
+		}
+		return frames[(head - 1 - framesAgo + frames.length) % frames.length];
+	}
+	
+	/**
+	 * Returns a new Frame holding the mean of each counter and timing over all recorded frames,
+	 * and the greatest {@link Frame#maxEventDepth}; or <tt>null</tt> if no frames are recorded.
+	 */
+	public synchronized Frame average () {
+		if (count == 0) { return null; }
+		
+		long visited = 0, updated = 0, drawn = 0, culled = 0, hitTested = 0, events = 0;
+		long updateNanos = 0, renderNanos = 0, eventNanos = 0, allocated = 0;
+		Frame avg = new Frame();
+		Frame f;
+		for (int i=0; i<count; i++) {
+			f = frame(i);
+			visited += f.spritesVisited;
+			updated += f.spritesUpdated;
+			drawn += f.spritesDrawn;
+			culled += f.spritesCulled;
+			hitTested += f.spritesHitTested;
+			events += f.events;
+			avg.maxEventDepth = Math.max(avg.maxEventDepth, f.maxEventDepth);
+			updateNanos += f.updateNanos;
+			renderNanos += f.renderNanos;
+			eventNanos += f.eventNanos;
+			allocated = (allocated < 0 || f.allocatedBytes < 0) ? -1 : allocated + f.allocatedBytes;
+		}
+		avg.frame = frame(0).frame;
+		avg.spritesVisited = (int)(visited / count);
+		avg.spritesUpdated = (int)(updated / count);
+		avg.spritesDrawn = (int)(drawn / count);
+		avg.spritesCulled = (int)(culled / count);
+		avg.spritesHitTested = (int)(hitTested / count);
+		avg.events = (int)(events / count);
+		avg.updateNanos = updateNanos / count;
+		avg.renderNanos = renderNanos / count;
+		avg.eventNanos = eventNanos / count;
+		avg.allocatedBytes = (allocated < 0) ? -1 : allocated / count;
+		return avg;
+	}
+	
+	/**
+	 * Discard all recorded frames.
+	 */
+	public synchronized void clear () {
+		head = 0;
+		count = 0;
+	}
+	
+	public String toString () {
+		Frame avg = average();
+		return (avg == null) ? "NestStats: no frames recorded" : "NestStats, mean of "+ numFrames() +" frames: "+ avg;
+	}
+	
+	
+	//-----<PACKAGE-PRIVATE METHODS>---------------------------------//
+	/**
+	 * Add timings to the frame in progress.
+	 */
+	void addTime (long updateNanos, long renderNanos, long eventNanos) {
+		current.updateNanos += updateNanos;
+		current.renderNanos += renderNanos;
+		current.eventNanos += eventNanos;
+	}
+	
+	/**
+	 * Count an event dispatched through the display list.
+	 */
+	void countEvent () {
+		current.events++;
+	}
+	
+	/**
+	 * Close the frame in progress: collect and reset the counters of <tt>ctx</tt>,
+	 * record the frame into the ring buffer, and start the next frame.
+	 */
+	void endFrame (FrameContext ctx) {
+		current.spritesVisited = ctx.visited;
+		current.spritesUpdated = ctx.updated;
+		current.spritesDrawn = ctx.drawn;
+		current.spritesCulled = ctx.culled;
+		current.spritesHitTested = ctx.hitTested;
+		current.maxEventDepth = ctx.maxEventDepth;
+		ctx.resetCounters();
+		
+		long allocated = allocatedBytes();
+		current.allocatedBytes = (allocated < 0 || frameStartAllocated < 0) ? -1 : allocated - frameStartAllocated;
+		frameStartAllocated = allocated;
+		current.frame = ++frameSerial;
+		
+		synchronized (this) {
+			frames[head].copy(current);
+			head = (head + 1) % frames.length;
+			count = Math.min(count + 1, frames.length);
+		}
+		current.reset();
+	}
+	
+	/**
+	 * Start counting from scratch, e.g. when stats are enabled.
+	 */
+	void restart (FrameContext ctx) {
+		ctx.resetCounters();
+		current.reset();
+		frameThread = null;
+		frameStartAllocated = allocatedBytes();
+	}
+	//-----</PACKAGE-PRIVATE METHODS>--------------------------------//
+	
+	
+	private long allocatedBytes () {
+		if (allocationCounter == null) { return -1; }
+		
+		Thread thread = Thread.currentThread();
+		if (frameThread != thread) {
+			// updateDisplayList() called from a different thread than before; allocations can't be compared.
+			frameThread = thread;
+			frameStartAllocated = -1;
+		}
+		try {
+			return allocationCounter.getThreadAllocatedBytes(thread.getId());
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+	
+	private static com.sun.management.ThreadMXBean allocationCounter () {
+		try {
+			Object bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean)bean;
+				if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+					return counter;
+				}
+			}
+		} catch (Throwable t) {
+			// com.sun.management not available on this JVM.
+		}
+		return null;
+	}
+}
@@ -0,0 +1,330 @@
+/*
+ * This file is part of Nest.
+ * Nest - http://transmote.com/nest/ is a
+ * derivative of Processing - http://processing.org/
+ * Copyright (C) 2011, Eric Socolofsky
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.transmote.nest;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Animates properties of NestSprites on a display list from one value to another over time,
+ * without any <tt>update()</tt> code on the animated NestSprites.
+ * Each NestSpriteContainer owns a NestTweenEngine, accessed via {@link NestSpriteContainer#tweenEngine()}.
+ * </p><p>
+ * e.g.:
+ * <pre>
+ * NestTweenEngine tweens = spriteContainer.tweenEngine();
+ * tweens.tween(sprite, NestTweenEngine.X, 400, 1000, NestTweenEngine.EASE_OUT_CUBIC);
+ * </pre>
+ * </p><p>
+ * Tweens are advanced once per <tt>update()</tt> pass, before any NestSprite is updated,
+ * by the time elapsed since the previous pass (or by the step length, with a fixed update rate).
+ * Active tweens are kept in parallel primitive arrays and advanced in a single loop, and
+ * finished tweens free their slots for reuse, so that once the arrays have grown to fit
+ * the largest number of simultaneous tweens, the engine does not allocate.
+ * </p><p>
+ * Multiple tweens of the same property of the same NestSprite are not merged;
+ * call {@link #cancel(NestSprite, int)} before starting a tween that should replace another.
+ * </p>
+ *
+ * @author		Eric Socolofsky
+ */
+public class NestTweenEngine {
+	//-----<PROPERTIES>----------------------------------------------//
+	/** {@link NestSprite#x} */
+	public static final int X = 0;
+	/** {@link NestSprite#y} */
+	public static final int Y = 1;
+	/** {@link NestSprite#z} */
+	public static final int Z = 2;
+	/** {@link NestSprite#scaleX} */
+	public static final int SCALE_X = 3;
+	/** {@link NestSprite#scaleY} */
+	public static final int SCALE_Y = 4;
+	/** {@link NestSprite#scaleZ} */
+	public static final int SCALE_Z = 5;
+	/** {@link NestSprite#rotationX} */
+	public static final int ROTATION_X = 6;
+	/** {@link NestSprite#rotationY} */
+	public static final int ROTATION_Y = 7;
+	/** {@link NestSprite#rotationZ} */
+	public static final int ROTATION_Z = 8;
+	//-----</PROPERTIES>---------------------------------------------//
+	
+	
+	//-----<EASING>--------------------------------------------------//
+	public static final int LINEAR = 0;
+	public static final int EASE_IN_QUAD = 1;
+	public static final int EASE_OUT_QUAD = 2;
+	public static final int EASE_IN_OUT_QUAD = 3;
+	public static final int EASE_IN_CUBIC = 4;
+	public static final int EASE_OUT_CUBIC = 5;
+	public static final int EASE_IN_OUT_CUBIC = 6;
+	public static final int EASE_IN_OUT_SINE = 7;
+	//-----</EASING>-------------------------------------------------//
+	
+	
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private final NestSpriteContainer container;
+	
+	// active tweens occupy slots [0, count); a finished tween's slot is filled by the last active tween.
+	private NestSprite[] targets = new NestSprite[INITIAL_CAPACITY];
+	private int[] properties = new int[INITIAL_CAPACITY];
+	private int[] easings = new int[INITIAL_CAPACITY];
+	private float[] starts = new float[INITIAL_CAPACITY];
+	private float[] ends = new float[INITIAL_CAPACITY];
+	private float[] durations = new float[INITIAL_CAPACITY];
+	private float[] elapsed = new float[INITIAL_CAPACITY];
+	private int count = 0;
+	
+	
+	NestTweenEngine (NestSpriteContainer container) {
+		this.container = container;
+	}
+	
+	/**
+	 * Tween a property of <tt>target</tt> from its current value to <tt>end</tt>.
+	 * 
+	 * @param	target			The NestSprite to animate.
+	 * @param	property		The property to animate; one of {@link #X}, {@link #Y}, {@link #Z},
+	 * 							{@link #SCALE_X}, {@link #SCALE_Y}, {@link #SCALE_Z},
+	 * 							{@link #ROTATION_X}, {@link #ROTATION_Y}, {@link #ROTATION_Z}.
+	 * @param	end				Value of <tt>property</tt> at the end of the tween.
+	 * @param	durationMillis	Length of the tween, in milliseconds.
+	 * @param	easing			Easing function; one of {@link #LINEAR}, {@link #EASE_IN_QUAD}, etc.
+	 * @throws	IllegalArgumentException	Thrown if <tt>target</tt> is null, or <tt>property</tt> is unknown.
+	 */
+	public void tween (NestSprite target, int property, float end, float durationMillis, int easing) throws IllegalArgumentException {
+		tween(target, property, getValue(target, property), end, durationMillis, 0, easing);
+	}
+	
+	/**
+	 * Tween a property of <tt>target</tt> from <tt>start</tt> to <tt>end</tt>, after a delay.
+	 * <tt>target</tt> is not modified until the delay has passed.
+	 * 
+	 * @param	target			The NestSprite to animate.
+	 * @param	property		The property to animate; one of {@link #X}, {@link #Y}, {@link #Z},
+	 * 							{@link #SCALE_X}, {@link #SCALE_Y}, {@link #SCALE_Z},
+	 * 							{@link #ROTATION_X}, {@link #ROTATION_Y}, {@link #ROTATION_Z}.
+	 * @param	start			Value of <tt>property</tt> at the start of the tween.
+	 * @param	end				Value of <tt>property</tt> at the end of the tween.
+	 * @param	durationMillis	Length of the tween, in milliseconds.
+	 * @param	delayMillis		Time to wait before starting the tween, in milliseconds.
+	 * @param	easing			Easing function; one of {@link #LINEAR}, {@link #EASE_IN_QUAD}, etc.
+	 * @throws	IllegalArgumentException	Thrown if <tt>target</tt> is null, or <tt>property</tt> is unknown.
+	 */
+	public synchronized void tween (NestSprite target, int property, float start, float end, float durationMillis, float delayMillis, int easing) throws IllegalArgumentException {
+		if (target == null) {
+			throw new IllegalArgumentException("Cannot tween a null NestSprite.");
+		}
+		if (property < X || property > ROTATION_Z) {
+			throw new IllegalArgumentException("Unknown tween property: "+ property);
+		}
+		if (count == targets.length) {
+			grow(2 * count);
+		}
+		
+		int i = count++;
+		targets[i] = target;
+		properties[i] = property;
+		easings[i] = easing;
+		starts[i] = start;
+		ends[i] = end;
+		durations[i] = Math.max(0, durationMillis);
+		elapsed[i] = -Math.max(0, delayMillis);
+	}
+	
+	/**
+	 * Stop all tweens of <tt>target</tt>, leaving its properties at their current values.
+	 */
+	public synchronized void cancel (NestSprite target) {
+		for (int i=0; i<count; i++) {
+			if (targets[i] == target) {
+				remove(i--);
+			}
+		}
+	}
+	
+	/**
+	 * Stop all tweens of one property of <tt>target</tt>, leaving it at its current value.
+	 */
+	public synchronized void cancel (NestSprite target, int property) {
+		for (int i=0; i<count; i++) {
+			if (targets[i] == target && properties[i] == property) {
+				remove(i--);
+			}
+		}
+	}
+	
+	/**
+	 * Stop all tweens.
+	 */
+	public synchronized void clear () {
+		Arrays.fill(targets, 0, count, null);
+		count = 0;
+	}
+	
+	/**
+	 * Returns <tt>true</tt> if any tween of <tt>target</tt>, including a delayed one, has yet to finish.
+	 */
+	public synchronized boolean isTweening (NestSprite target) {
+		for (int i=0; i<count; i++) {
+			if (targets[i] == target) { return true; }
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the number of tweens, including delayed ones, that have yet to finish.
+	 */
+	public synchronized int numTweens () {
+		return count;
+	}
+	
+	/**
+	 * Make room for <tt>capacity</tt> simultaneous tweens,
+	 * to avoid growing the engine's arrays during animation.
+	 */
+	public synchronized void ensureCapacity (int capacity) {
+		if (capacity > targets.length) {
+			grow(capacity);
+		}
+	}
+	
+	/**
+	 * Returns eased progress through a tween, for progress <tt>t</tt> in [0, 1].
+	 */
+	public static float ease (int easing, float t) {
+		switch (easing) {
+			case EASE_IN_QUAD:
+				return t * t;
+			case EASE_OUT_QUAD:
+				return t * (2 - t);
+			case EASE_IN_OUT_QUAD:
+				return (t < 0.5f) ? 2 * t * t : -1 + (4 - 2 * t) * t;
+			case EASE_IN_CUBIC:
+				return t * t * t;
+			case EASE_OUT_CUBIC:
+				t -= 1;
+				return t * t * t + 1;
+			case EASE_IN_OUT_CUBIC:
+				if (t < 0.5f) { return 4 * t * t * t; }
+				t = 2 * t - 2;
+				return 0.5f * t * t * t + 1;
+			case EASE_IN_OUT_SINE:
+				return 0.5f * (1 - (float)Math.cos(Math.PI * t));
+			default:
+				return t;
+		}
+	}
+	
+	/**
+	 * Advance all tweens by <tt>elapsedMillis</tt>, and write their current values
+	 * into their target NestSprites.  Called by NestSpriteContainer before each <tt>update()</tt> pass.
+	 */
+	synchronized void advance (float elapsedMillis) {
+		boolean activeSet = container.activeSetEnabled();
+		
+		NestSprite target;
+		float t;
+		float value;
+		boolean finished;
+		for (int i=0; i<count; i++) {
+			t = (elapsed[i] += elapsedMillis);
+			if (t < 0) { continue; }
+			
+			target = targets[i];
+			if (target.isDisposed()) {
+				remove(i--);
+				continue;
+			}
+			
+			finished = t >= durations[i];
+			if (finished) {
+				value = ends[i];
+			} else {
+				value = starts[i] + (ends[i] - starts[i]) * ease(easings[i], t / durations[i]);
+			}
+			
+			setValue(target, properties[i], value);
+			if (activeSet) {
+				container.queuePrerender(target);
+			}
+			
+			if (finished) {
+				remove(i--);
+			}
+		}
+	}
+	
+	private void remove (int i) {
+		int last = --count;
+		targets[i] = targets[last];
+		properties[i] = properties[last];
+		easings[i] = easings[last];
+		starts[i] = starts[last];
+		ends[i] = ends[last];
+		durations[i] = durations[last];
+		elapsed[i] = elapsed[last];
+		targets[last] = null;
+	}
+	
+	private void grow (int capacity) {
+		targets = Arrays.copyOf(targets, capacity);
+		properties = Arrays.copyOf(properties, capacity);
+		easings = Arrays.copyOf(easings, capacity);
+		starts = Arrays.copyOf(starts, capacity);
+		ends = Arrays.copyOf(ends, capacity);
+		durations = Arrays.copyOf(durations, capacity);
+		elapsed = Arrays.copyOf(elapsed, capacity);
+	}
+	
+	private static float getValue (NestSprite target, int property) {
+		switch (property) {
+			case X:				return target.x;
+			case Y:				return target.y;
+			case Z:				return target.z;
+			case SCALE_X:		return target.scaleX;
+			case SCALE_Y:		return target.scaleY;
+			case SCALE_Z:		return target.scaleZ;
+			case ROTATION_X:	return target.rotationX;
+			case ROTATION_Y:	return target.rotationY;
+			case ROTATION_Z:	return target.rotationZ;
+			default:
+				throw new IllegalArgumentException("Unknown tween property: "+ property);
+		}
+	}
+	
+	private static void setValue (NestSprite target, int property, float value) {
+		switch (property) {
+			case X:				target.x = value;			break;
+			case Y:				target.y = value;			break;
+			case Z:				target.z = value;			break;
+			case SCALE_X:		target.scaleX = value;		break;
+			case SCALE_Y:		target.scaleY = value;		break;
+			case SCALE_Z:		target.scaleZ = value;		break;
+			case ROTATION_X:	target.rotationX = value;	break;
+			case ROTATION_Y:	target.rotationY = value;	break;
+			case ROTATION_Z:	target.rotationZ = value;	break;
+		}
+	}
+}
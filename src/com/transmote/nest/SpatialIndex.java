@@ -0,0 +1,377 @@
+/*
+ * This file is part of Nest.
+ * Nest - http://transmote.com/nest/ is a
+ * derivative of Processing - http://processing.org/
+ * Copyright (C) 2011, Eric Socolofsky
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.transmote.nest;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+
+/**
+ * <p>
+ * Loose quadtree of the world-space bounds rects of the NestSprites on a display list.
+ * Owned by a NestSpriteContainer when {@link NestSpriteContainer#setSpatialIndexEnabled(boolean)}
+ * is on, and used to find candidate targets for mouse events and hit tests
+ * without visiting every NestSprite on the display list.
+ * </p><p>
+ * Each NestSprite's entry is refreshed during <tt>prerender()</tt>, and only moves within
+ * the tree when its world transform or bounds rect has changed.  Entries are placed
+ * by center and size, so that a NestSprite straddling a quadrant boundary does not
+ * get stuck near the root.  The tree grows outward as NestSprites move beyond its extent.
+ * </p>
+ *
+ * @author		Eric Socolofsky
+ */
+class SpatialIndex {
+	private static final float MIN_HALF_SIZE = 16;
+	private static final int MAX_DEPTH = 16;
+
+	/**
+	 * Serial number of the event currently being routed;
+	 * NestSprites whose <tt>routeStamp</tt> matches are, or contain, a hit.
+	 */
+	int routeSerial = 0;
+
+	/**
+	 * True while an event is being routed using the current <tt>routeSerial</tt>.
+	 */
+	boolean routing = false;
+
+	// the tree and the scratch objects below are guarded by this SpatialIndex's monitor.
+	private Node root = null;
+	private final ArrayList<NestSprite> results = new ArrayList<NestSprite>();
+	private final Point2D.Float worldPt = new Point2D.Float();
+	private final Point2D.Float localPt = new Point2D.Float();
+
+
+	/**
+	 * Refresh the entry for a NestSprite, inserting, moving, or removing it as needed.
+	 * NestSprites with an empty bounds rect cannot be hit, and are not kept in the tree.
+	 * Synchronized, as independentUpdate subtrees may be prerendered concurrently.
+	 */
+	synchronized void update (NestSprite sprite) {
+		Entry e = sprite.spatialEntry;
+		if (e == null) {
+			e = sprite.spatialEntry = new Entry(sprite);
+		} else if (e.worldVersion == sprite.worldVersion &&
+				e.boundsLeft == sprite.boundsLeft && e.boundsTop == sprite.boundsTop &&
+				e.width == sprite.width && e.height == sprite.height) {
+			return;
+		}
+
+		e.worldVersion = sprite.worldVersion;
+		e.boundsLeft = sprite.boundsLeft;
+		e.boundsTop = sprite.boundsTop;
+		e.width = sprite.width;
+		e.height = sprite.height;
+
+		if (sprite.width <= 0 || sprite.height <= 0) {
+			remove(e);
+			return;
+		}
+
+		// axis-aligned bounds of the transformed bounds rect,
+		// via its transformed center and half-extents.
+		AffineTransform m = sprite.worldMatrix;
+		double hw = 0.5 * sprite.width;
+		double hh = 0.5 * sprite.height;
+		double lx = sprite.boundsLeft + hw;
+		double ly = sprite.boundsTop + hh;
+		double cx = m.getScaleX() * lx + m.getShearX() * ly + m.getTranslateX();
+		double cy = m.getShearY() * lx + m.getScaleY() * ly + m.getTranslateY();
+		double ex = Math.abs(m.getScaleX()) * hw + Math.abs(m.getShearX()) * hh;
+		double ey = Math.abs(m.getShearY()) * hw + Math.abs(m.getScaleY()) * hh;
+
+		if (Double.isNaN(cx + cy + ex + ey) || Double.isInfinite(cx + cy + ex + ey)) {
+			remove(e);
+			return;
+		}
+
+		e.minX = (float)(cx - ex);
+		e.minY = (float)(cy - ey);
+		e.maxX = (float)(cx + ex);
+		e.maxY = (float)(cy + ey);
+
+		if (e.node != null && e.node.holds(e)) {
+			// still belongs at the same node; no need to move it.
+			return;
+		}
+		remove(e);
+		insert(e);
+	}
+
+	/**
+	 * Remove the entry for a NestSprite, if it is in the tree.
+	 */
+	synchronized void remove (NestSprite sprite) {
+		if (sprite.spatialEntry != null) {
+			remove(sprite.spatialEntry);
+			sprite.spatialEntry.worldVersion = -1;
+		}
+	}
+
+	/**
+	 * Mark every NestSprite whose bounds rect contains its current mouse coordinates,
+	 * and all of its ancestors, with a new <tt>routeSerial</tt>.
+	 * Synchronized, as are all queries, as the tree may be updated concurrently.
+	 *
+	 * @param	ctx		Context to count hit tests into.
+	 * @param	x		Mouse x-coordinate, in world space.
+	 * @param	y		Mouse y-coordinate, in world space.
+	 */
+	synchronized void route (FrameContext ctx, float x, float y) {
+		routeSerial++;
+		query(x, y);
+
+		NestSprite sprite;
+		for (int i=0; i<results.size(); i++) {
+			sprite = results.get(i);
+			if (sprite.routeStamp == routeSerial) { continue; }
+			if (ctx.statsEnabled) { ctx.hitTested++; }
+
+			// test exactly, against the local mouse coordinates
+			// maintained by prerender(), or calculated on demand.
+			sprite.validateMouse();
+			if (sprite.bounds().contains(sprite.mouseX, sprite.mouseY)) {
+				while (sprite != null && sprite.routeStamp != routeSerial) {
+					sprite.routeStamp = routeSerial;
+					sprite = sprite.parent;
+				}
+			}
+		}
+		results.clear();
+		routing = true;
+	}
+
+	/**
+	 * Returns true if the bounds rect of any descendant of <tt>sprite</tt>
+	 * contains the specified point.
+	 * Synchronized, as <tt>hitTest()</tt> may be called from <tt>update()</tt>
+	 * in independentUpdate subtrees prerendered concurrently.
+	 *
+	 * @param	ctx		Context to count hit tests into; may be null.
+	 * @param	sprite	The NestSprite whose descendants to test.
+	 * @param	pt		Point, in the coordinate system of <tt>sprite</tt>.
+	 */
+	synchronized boolean hitTestDescendants (FrameContext ctx, NestSprite sprite, Point2D pt) {
+		sprite.worldMatrix.transform(pt, worldPt);
+		query(worldPt.x, worldPt.y);
+
+		boolean hit = false;
+		NestSprite candidate;
+		for (int i=0; i<results.size() && !hit; i++) {
+			candidate = results.get(i);
+			if (candidate == sprite || !isDescendant(candidate, sprite)) { continue; }
+			if (ctx != null && ctx.statsEnabled) { ctx.hitTested++; }
+
+			try {
+				candidate.worldMatrix.inverseTransform(worldPt, localPt);
+			} catch (NoninvertibleTransformException e) {
+				continue;
+			}
+			hit = candidate.bounds().contains(localPt);
+		}
+		results.clear();
+
+		return hit;
+	}
+
+	private static boolean isDescendant (NestSprite sprite, NestSprite ancestor) {
+		NestSprite ns = sprite.parent;
+		while (ns != null) {
+			if (ns == ancestor) { return true; }
+			ns = ns.parent;
+		}
+		return false;
+	}
+
+	private void query (float x, float y) {
+		if (root != null) {
+			query(root, x, y);
+		}
+	}
+
+	private void query (Node node, float x, float y) {
+		if (node.count == 0) { return; }
+
+		// test against loose bounds, which are twice the size of the node's core.
+		float looseHalf = 2 * node.half;
+		if (x < node.cx - looseHalf || x > node.cx + looseHalf ||
+				y < node.cy - looseHalf || y > node.cy + looseHalf) {
+			return;
+		}
+
+		Entry e;
+		for (int i=0; i<node.entries.size(); i++) {
+			e = node.entries.get(i);
+			if (x >= e.minX && x <= e.maxX && y >= e.minY && y <= e.maxY) {
+				results.add(e.sprite);
+			}
+		}
+
+		if (node.children != null) {
+			for (int i=0; i<4; i++) {
+				if (node.children[i] != null) {
+					query(node.children[i], x, y);
+				}
+			}
+		}
+	}
+
+	private void insert (Entry e) {
+		float cx = e.centerX();
+		float cy = e.centerY();
+		float extent = e.extent();
+
+		if (root == null) {
+			root = new Node(null, cx, cy, Math.max(MIN_HALF_SIZE, extent));
+		}
+		while (!root.fits(cx, cy, extent)) {
+			grow(cx, cy);
+		}
+
+		Node node = root;
+		int depth = 0;
+		while (depth < MAX_DEPTH && extent <= 0.5f * node.half) {
+			node = node.child(node.quadrant(cx, cy));
+			depth++;
+		}
+		node.add(e);
+	}
+
+	private void remove (Entry e) {
+		if (e.node == null) { return; }
+
+		ArrayList<Entry> entries = e.node.entries;
+		Entry last = entries.remove(entries.size() - 1);
+		if (last != e) {
+			entries.set(e.slot, last);
+			last.slot = e.slot;
+		}
+		for (Node n = e.node; n != null; n = n.parent) {
+			n.count--;
+		}
+		e.node = null;
+		e.slot = -1;
+	}
+
+	/**
+	 * Double the size of the tree toward the specified point;
+	 * the old root becomes one quadrant of the new root.
+	 */
+	private void grow (float towardX, float towardY) {
+		Node oldRoot = root;
+		float h = oldRoot.half;
+		float cx = oldRoot.cx + (towardX < oldRoot.cx ? -h : h);
+		float cy = oldRoot.cy + (towardY < oldRoot.cy ? -h : h);
+
+		root = new Node(null, cx, cy, 2 * h);
+		root.children = new Node[4];
+		root.children[root.quadrant(oldRoot.cx, oldRoot.cy)] = oldRoot;
+		root.count = oldRoot.count;
+		oldRoot.parent = root;
+	}
+
+
+	static class Entry {
+		final NestSprite sprite;
+		float minX, minY, maxX, maxY;
+		Node node = null;
+		int slot = -1;
+
+		// state of the NestSprite when this Entry was last updated
+		int worldVersion = -1;
+		float boundsLeft, boundsTop, width, height;
+
+		Entry (NestSprite sprite) {
+			this.sprite = sprite;
+		}
+
+		float centerX () { return 0.5f * (minX + maxX); }
+		float centerY () { return 0.5f * (minY + maxY); }
+		float extent () { return 0.5f * Math.max(maxX - minX, maxY - minY); }
+	}
+
+	private static class Node {
+		final float cx;
+		final float cy;
+		final float half;
+		Node parent;
+		Node[] children = null;
+		final ArrayList<Entry> entries = new ArrayList<Entry>();
+		int count = 0;
+
+		Node (Node parent, float cx, float cy, float half) {
+			this.parent = parent;
+			this.cx = cx;
+			this.cy = cy;
+			this.half = half;
+		}
+
+		boolean fits (float x, float y, float extent) {
+			return extent <= half && Math.abs(x - cx) <= half && Math.abs(y - cy) <= half;
+		}
+
+		/**
+		 * True if an Entry would be placed at this Node, were it inserted now.
+		 */
+		boolean holds (Entry e) {
+			float extent = e.extent();
+			if (!fits(e.centerX(), e.centerY(), extent)) { return false; }
+			return extent > 0.5f * half || depth() >= MAX_DEPTH;
+		}
+
+		int quadrant (float x, float y) {
+			return (x >= cx ? 1 : 0) | (y >= cy ? 2 : 0);
+		}
+
+		Node child (int quadrant) {
+			if (children == null) {
+				children = new Node[4];
+			}
+			if (children[quadrant] == null) {
+				float h = 0.5f * half;
+				children[quadrant] = new Node(this,
+						cx + ((quadrant & 1) != 0 ? h : -h),
+						cy + ((quadrant & 2) != 0 ? h : -h),
+						h);
+			}
+			return children[quadrant];
+		}
+
+		void add (Entry e) {
+			e.node = this;
+			e.slot = entries.size();
+			entries.add(e);
+			for (Node n = this; n != null; n = n.parent) {
+				n.count++;
+			}
+		}
+
+		private int depth () {
+			int depth = 0;
+			for (Node n = parent; n != null; n = n.parent) {
+				depth++;
+			}
+			return depth;
+		}
+	}
+}
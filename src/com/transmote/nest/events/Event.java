@@ -191,6 +191,23 @@ public class Event {
 		return propagationStopped;
 	}
 	
+	/**
+	 * Reset this Event instance to a newly-constructed state with the specified type,
+	 * so that it can be dispatched again.  Used internally by the Nest framework
+	 * to avoid allocating a new Event for every input event;
+	 * developers should not call this method directly.
+	 * 
+	 * @param	type		The event type.
+	 */
+	protected void recycle (int type) {
+		this.type = type;
+		target = null;
+		currentTarget = null;
+		phase = PHASE.NOT_ON_DISPLAY_LIST;
+		pEvent = null;
+		propagationStopped = false;
+	}
+	
 	@Override
 	public String toString () {
 		return ("Event::"+ type);
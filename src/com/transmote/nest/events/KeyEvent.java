@@ -24,6 +24,9 @@ package com.transmote.nest.events;
  * <p>
  * KeyEvent instances represent events dispatched by the Nest framework,
  * which wrap the processing.event.Event instances generated by Processing. 
+ * </p><p>
+ * NestSpriteContainer reuses a single KeyEvent instance for every key event it receives,
+ * so handlers should not retain a reference to a KeyEvent after returning.
  * </p>
  * 
  * @author		Eric Socolofsky
@@ -69,6 +72,18 @@ public class KeyEvent extends Event {
 		return pKeyEvent;
 	}
 	
+	/**
+	 * @exclude
+	 * Rewrap this KeyEvent instance around a new processing.event.KeyEvent,
+	 * so that it can be dispatched again.  Used internally by NestSpriteContainer;
+	 * developers should not call this method directly.
+	 */
+	public void recycle (processing.event.KeyEvent pEvent) {
+		super.recycle(pEvent.getAction());
+		this.pEvent = pEvent;
+		this.pKeyEvent = pEvent;
+	}
+	
 	//-----<PROCESSING API>------------------------------------------//
 	public char getKey () {
 		return pKeyEvent.getKey();
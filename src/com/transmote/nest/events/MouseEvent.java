@@ -26,6 +26,9 @@ import java.awt.geom.Point2D;
  * <p>
  * MouseEvent instances represent events dispatched by the Nest framework,
  * which wrap the processing.event.Event instances generated by Processing. 
+ * </p><p>
+ * NestSpriteContainer reuses a single MouseEvent instance for every mouse event it receives,
+ * so handlers should not retain a reference to a MouseEvent after returning.
  * </p>
  * 
  * @author		Eric Socolofsky
@@ -86,6 +89,18 @@ public class MouseEvent extends Event {
 		return pMouseEvent;
 	}
 	
+	/**
+	 * @exclude
+	 * Rewrap this MouseEvent instance around a new processing.event.MouseEvent,
+	 * so that it can be dispatched again.  Used internally by NestSpriteContainer;
+	 * developers should not call this method directly.
+	 */
+	public void recycle (processing.event.MouseEvent pEvent) {
+		super.recycle(pEvent.getAction());
+		this.pEvent = pEvent;
+		this.pMouseEvent = pEvent;
+	}
+	
 	//-----<PROCESSING API>------------------------------------------//
 	public int getX () {
 		return pMouseEvent.getX();
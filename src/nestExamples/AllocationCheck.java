@@ -0,0 +1,305 @@
+package nestExamples;
+
+import java.awt.geom.Rectangle2D;
+import java.lang.management.ManagementFactory;
+
+import com.transmote.nest.NestSprite;
+import com.transmote.nest.NestSpriteContainer;
+import com.transmote.nest.NestTweenEngine;
+import com.transmote.nest.events.MouseEvent;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PMatrix2D;
+
+/**
+ * <p>
+ * Checks that the display list's per-frame paths allocate nothing once warmed up:
+ * {@link NestSpriteContainer#updateDisplayList()} (the update and render passes),
+ * and mouse event dispatch (move, press, release, click) via
+ * {@link NestSpriteContainer#mouseEvent(processing.event.MouseEvent)}.
+ * </p><p>
+ * The check is run once with the default settings, once with each of stats, the spatial index,
+ * culling, active-set scheduling, a fixed update rate, tweens, and managed matrices enabled,
+ * and once with all of them enabled, each on a fresh display list.
+ * After <tt>WARMUP_FRAMES</tt> frames, the bytes allocated by the calling thread over
+ * <tt>MEASURED_FRAMES</tt> frames are read from <tt>com.sun.management.ThreadMXBean</tt>.
+ * The results are printed to the console, and the check exits with status 1 if any bytes were allocated.
+ * </p><p>
+ * Runs from <tt>main()</tt> without a window (see {@link Headless}), e.g. on a build server.
+ * Only Nest's own allocations are counted, not the renderer's: the NestSprites draw nothing,
+ * and the display list is drawn into a renderer that ignores its matrix calls
+ * (PGraphicsJava2D allocates a new <tt>AffineTransform</tt> on every <tt>pushMatrix()</tt>).
+ * Profiling, and parallel update, which runs work on other threads, are left off.
+ * </p>
+ */
+public class AllocationCheck {
+	private static final int WIDTH = 800;
+	private static final int HEIGHT = 800;
+	private static final int DEPTH = 3;
+	private static final int FAN_OUT = 10;
+	// long enough for the JIT to settle; recompiling compiled code mid-measurement can allocate.
+	private static final int WARMUP_FRAMES = 5000;
+	private static final int MEASURED_FRAMES = 1000;
+	
+	// mouse locations visited, one per frame, in turn.
+	private static final int NUM_LOCATIONS = 16;
+	
+	// NestSprites swing back and forth, reversing every SWING_UPDATES updates,
+	// so that every place they reach (e.g. every spatial index cell) is reached while warming up.
+	private static final int SWING_UPDATES = 200;
+	private static final float SWING_SPEED = 0.002f;
+	
+	// settings checked, each on its own display list; ALL enables every other setting at once.
+	private static final int DEFAULT = 0;
+	private static final int STATS = 1;
+	private static final int SPATIAL_INDEX = 2;
+	private static final int CULLING = 3;
+	private static final int ACTIVE_SET = 4;
+	private static final int FIXED_TIMESTEP = 5;
+	private static final int TWEENS = 6;
+	private static final int MANAGED_MATRIX = 7;
+	private static final int ALL = 8;
+	private static final String[] SETTINGS = { "default", "stats", "spatial index", "culling",
+		"active set", "fixed timestep", "tweens", "managed matrix", "all" };
+	
+	private final PApplet p;
+	private final processing.event.MouseEvent[][] events;
+	private int handled = 0;
+	
+	
+	public static void main (String _args[]) {
+		com.sun.management.ThreadMXBean counter = allocationCounter();
+		if (counter == null) {
+			System.out.println("AllocationCheck: per-thread allocation counting is not supported by this JVM.");
+			return;
+		}
+		
+		AllocationCheck check;
+		try {
+			check = new AllocationCheck(Headless.applet(new NullRenderer(), WIDTH, HEIGHT));
+		} catch (Exception e) {
+			System.out.println("AllocationCheck: could not create a PApplet:");
+			e.printStackTrace();
+			System.exit(1);
+			return;
+		}
+		
+		boolean passed = true;
+		long allocated;
+		for (int setting=0; setting<SETTINGS.length; setting++) {
+			allocated = check.measure(setting, counter);
+			System.out.println(String.format("AllocationCheck: %-16s %d bytes allocated over %d frames",
+					SETTINGS[setting], allocated, MEASURED_FRAMES));
+			passed &= (allocated == 0);
+		}
+		System.out.println("AllocationCheck: "+ check.handled +" events handled.");
+		
+		if (!passed) {
+			System.out.println("AllocationCheck: FAILED");
+			System.exit(1);
+		}
+		System.out.println("AllocationCheck: passed");
+	}
+	
+	AllocationCheck (PApplet p) {
+		this.p = p;
+		
+		// all input events are created up front; Processing allocates one per event, Nest should not.
+		events = new processing.event.MouseEvent[NUM_LOCATIONS][];
+		int x, y;
+		for (int i=0; i<NUM_LOCATIONS; i++) {
+			x = 20 + (i % 4) * 24;
+			y = 20 + (i / 4) * 24;
+			events[i] = new processing.event.MouseEvent[] {
+					new processing.event.MouseEvent(null, 0, processing.event.MouseEvent.MOVE, 0, x, y, PApplet.LEFT, 0),
+					new processing.event.MouseEvent(null, 0, processing.event.MouseEvent.PRESS, 0, x, y, PApplet.LEFT, 1),
+					new processing.event.MouseEvent(null, 0, processing.event.MouseEvent.RELEASE, 0, x, y, PApplet.LEFT, 1),
+					new processing.event.MouseEvent(null, 0, processing.event.MouseEvent.CLICK, 0, x, y, PApplet.LEFT, 1)
+			};
+		}
+	}
+	
+	/**
+	 * Build a display list with the specified setting, warm it up,
+	 * and return the bytes allocated by <tt>MEASURED_FRAMES</tt> frames.
+	 */
+	private long measure (int setting, com.sun.management.ThreadMXBean counter) {
+		NestSpriteContainer container = new NestSpriteContainer(p);
+		buildTree(container, DEPTH, FAN_OUT);
+		configure(container, setting);
+		
+		for (int f=0; f<WARMUP_FRAMES; f++) {
+			frame(container, events[f % NUM_LOCATIONS]);
+		}
+		
+		long threadId = Thread.currentThread().getId();
+		long start = counter.getThreadAllocatedBytes(threadId);
+		for (int f=0; f<MEASURED_FRAMES; f++) {
+			frame(container, events[f % NUM_LOCATIONS]);
+		}
+		long allocated = counter.getThreadAllocatedBytes(threadId) - start;
+		
+		container.dispose();
+		return allocated;
+	}
+	
+	private void configure (NestSpriteContainer container, int setting) {
+		boolean all = (setting == ALL);
+		if (all || setting == STATS) {
+			container.setStatsEnabled(true);
+		}
+		if (all || setting == SPATIAL_INDEX) {
+			container.setSpatialIndexEnabled(true);
+		}
+		if (all || setting == CULLING) {
+			// cull about half of the display list.
+			container.setCullingEnabled(true);
+			container.setCullRect(new Rectangle2D.Float(0, 0, 60, HEIGHT));
+		}
+		if (all || setting == ACTIVE_SET) {
+			container.setActiveSetEnabled(true);
+		}
+		if (all || setting == FIXED_TIMESTEP) {
+			// faster than the frames run here, so that frames both with and without update steps are measured.
+			container.setUpdateRate(2000);
+		}
+		if (all || setting == TWEENS) {
+			// tweens that outlast the check, on each top-level NestSprite.
+			NestSprite sprite;
+			for (int i=0; i<container.numChildren(); i++) {
+				sprite = container.getChildAt(i);
+				container.tweenEngine().tween(sprite, NestTweenEngine.Y, sprite.y, sprite.y + 100, 1000000000f, 0, NestTweenEngine.EASE_IN_OUT_SINE);
+			}
+		}
+		if (all || setting == MANAGED_MATRIX) {
+			container.setManagedMatrixEnabled(true);
+		}
+	}
+	
+	/**
+	 * Run one frame: move the mouse, as Processing would between frames,
+	 * update and draw the display list, and press, release, and click.
+	 */
+	private void frame (NestSpriteContainer container, processing.event.MouseEvent[] frameEvents) {
+		p.mouseX = frameEvents[0].getX();
+		p.mouseY = frameEvents[0].getY();
+		container.mouseEvent(frameEvents[0]);
+		container.updateDisplayList();
+		for (int i=1; i<frameEvents.length; i++) {
+			container.mouseEvent(frameEvents[i]);
+		}
+	}
+	
+	/**
+	 * Fill <tt>root</tt> with a tree of CheckSprites,
+	 * with every other subtree updated via <tt>setUpdate(Object, String)</tt>.
+	 */
+	private void buildTree (NestSprite root, int depth, int fanOut) {
+		if (depth == 0) { return; }
+		
+		CheckSprite sprite;
+		for (int i=0; i<fanOut; i++) {
+			sprite = new CheckSprite();
+			sprite.x = 20 + (i % 4) * 24;
+			sprite.y = 20 + (i / 4) * 24;
+			if (depth > 1) {
+				sprite.scaleX = sprite.scaleY = 0.5f;
+			}
+			if (i % 2 == 1) {
+				sprite.setUpdate(this, "checkUpdate");
+			}
+			root.addChild(sprite);
+			buildTree(sprite, depth - 1, fanOut);
+		}
+	}
+	
+	public void checkUpdate (PApplet p, NestSprite sprite) {
+		((CheckSprite)sprite).swing();
+	}
+	
+	private static com.sun.management.ThreadMXBean allocationCounter () {
+		try {
+			Object bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean)bean;
+				if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+					return counter;
+				}
+			}
+		} catch (Throwable t) {
+			// com.sun.management not available on this JVM.
+		}
+		return null;
+	}
+	
+	/**
+	 * A NestSprite that swings back and forth, and handles mouse events, but draws nothing.
+	 */
+	private class CheckSprite extends NestSprite {
+		private int updates = 0;
+		
+		CheckSprite () {
+			setBounds(-8, -8, 16, 16);
+		}
+		
+		@Override
+		protected void update (PApplet p) {
+			swing();
+		}
+		
+		void swing () {
+			rotationZ += ((updates++ / SWING_UPDATES) % 2 == 0) ? SWING_SPEED : -SWING_SPEED;
+		}
+		
+		@Override
+		protected void mousePressed (MouseEvent evt) {
+			handled++;
+		}
+		
+		@Override
+		protected void mouseReleased (MouseEvent evt) {
+			handled++;
+		}
+		
+		@Override
+		protected void mouseClicked (MouseEvent evt) {
+			handled++;
+		}
+	}
+	
+	/**
+	 * A renderer that accepts the matrix calls made while rendering the display list, and does nothing with them.
+	 */
+	private static class NullRenderer extends PGraphics {
+		@Override
+		public void pushMatrix () {}
+		
+		@Override
+		public void popMatrix () {}
+		
+		@Override
+		public void translate (float tx, float ty) {}
+		
+		@Override
+		public void scale (float sx, float sy) {}
+		
+		@Override
+		public void rotate (float angle) {}
+		
+		@Override
+		public void resetMatrix () {}
+		
+		@Override
+		public void applyMatrix (float n00, float n01, float n02, float n10, float n11, float n12) {}
+		
+		@Override
+		public PMatrix2D getMatrix (PMatrix2D target) {
+			if (target == null) {
+				target = new PMatrix2D();
+			}
+			target.reset();
+			return target;
+		}
+	}
+}
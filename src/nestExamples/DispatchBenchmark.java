@@ -0,0 +1,139 @@
+package nestExamples;
+
+import java.lang.reflect.Method;
+
+import com.transmote.nest.NestSprite;
+import com.transmote.nest.NestSpriteContainer;
+import com.transmote.nest.UpdateBehavior;
+
+import processing.core.PApplet;
+
+/**
+ * <p>
+ * Compares the per-frame cost of update() overrides on 500 NestSprites, as in
+ * NestExamples.testLazySprites(): dispatched via <tt>Method.invoke()</tt> (the former
+ * implementation of <tt>setUpdate(Object, String)</tt>), via <tt>setUpdate(Object, String)</tt>,
+ * and via <tt>setUpdate(UpdateBehavior)</tt>.  Results are printed to the console.
+ * </p><p>
+ * Runs from <tt>main()</tt> without a window (see {@link Headless}),
+ * drawing into an offscreen JAVA2D renderer.
+ * </p>
+ */
+public class DispatchBenchmark {
+	private static final int WIDTH = 800;
+	private static final int HEIGHT = 800;
+	private static final int NUM_SPRITES = 500;
+	private static final int WARMUP_FRAMES = 120;
+	private static final int MEASURED_FRAMES = 600;
+	private static final String[] MODES = { "Method.invoke()", "setUpdate(Object, String)", "setUpdate(UpdateBehavior)" };
+	
+	private final PApplet p;
+	
+	
+	public static void main (String _args[]) {
+		DispatchBenchmark benchmark;
+		try {
+			benchmark = new DispatchBenchmark(Headless.applet(WIDTH, HEIGHT));
+		} catch (Exception e) {
+			System.out.println("DispatchBenchmark: could not create a PApplet:");
+			e.printStackTrace();
+			System.exit(1);
+			return;
+		}
+		
+		for (int mode=0; mode<MODES.length; mode++) {
+			System.out.println(MODES[mode] +": "+ PApplet.nf(benchmark.measure(mode), 1, 3) +"ms per frame");
+		}
+	}
+	
+	DispatchBenchmark (PApplet p) {
+		this.p = p;
+	}
+	
+	public void lazyUpdate (PApplet p, NestSprite sprite) {
+		sprite.x = (sprite.x + 1) % p.width;
+		sprite.rotationZ += 0.01f;
+	}
+	
+	/**
+	 * Run WARMUP_FRAMES and MEASURED_FRAMES frames with the specified mode.
+	 * @return	Mean time per measured frame, in milliseconds.
+	 */
+	private float measure (int mode) {
+		NestSpriteContainer spriteContainer = createSprites(mode);
+		long elapsed = 0;
+		long start;
+		for (int frame=0; frame<WARMUP_FRAMES + MEASURED_FRAMES; frame++) {
+			p.g.beginDraw();
+			p.g.background(0);
+			
+			start = System.nanoTime();
+			spriteContainer.updateDisplayList();
+			if (frame >= WARMUP_FRAMES) {
+				elapsed += System.nanoTime() - start;
+			}
+			p.g.endDraw();
+		}
+		spriteContainer.dispose();
+		return elapsed / (MEASURED_FRAMES * 1000000f);
+	}
+	
+	private NestSpriteContainer createSprites (int mode) {
+		NestSpriteContainer spriteContainer = new NestSpriteContainer(p);
+		UpdateBehavior behavior = new UpdateBehavior() {
+			public void update (PApplet p, NestSprite sprite) {
+				lazyUpdate(p, sprite);
+			}
+		};
+		
+		NestSprite sprite;
+		for (int i=0; i<NUM_SPRITES; i++) {
+			if (mode == 0) {
+				sprite = new ReflectiveSprite(this, "lazyUpdate");
+			} else {
+				sprite = new NestSprite();
+				if (mode == 1) {
+					sprite.setUpdate(this, "lazyUpdate");
+				} else {
+					sprite.setUpdate(behavior);
+				}
+			}
+			sprite.x = (i%100)*5;
+			sprite.y = 100 * (float)Math.floor(i/100);
+			spriteContainer.addChild(sprite);
+		}
+		return spriteContainer;
+	}
+	
+	
+	/**
+	 * Calls an update() override via <tt>Method.invoke()</tt>,
+	 * as <tt>setUpdate(Object, String)</tt> formerly did.
+	 */
+	private static class ReflectiveSprite extends NestSprite {
+		private final Method method;
+		private final Object target;
+		private final Object[] args = new Object[2];
+		
+		ReflectiveSprite (Object target, String methodName) {
+			this.target = target;
+			try {
+				method = target.getClass().getMethod(methodName, PApplet.class, NestSprite.class);
+			} catch (NoSuchMethodException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		
+		@Override
+		protected void update (PApplet p) {
+			try {
+				args[0] = p;
+				args[1] = this;
+				method.invoke(target, args);
+			} catch (Exception e) {
+				System.err.println("Error invoking update() override:");
+				e.printStackTrace();
+			}
+		}
+	}
+}
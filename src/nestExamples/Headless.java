@@ -0,0 +1,63 @@
+package nestExamples;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PGraphicsJava2D;
+
+/**
+ * <p>
+ * Creates PApplets that run a Nest display list without a window,
+ * for checks and benchmarks run from <tt>main()</tt> on machines without a display (e.g. build servers).
+ * </p><p>
+ * PApplet extends <tt>java.applet.Applet</tt>, whose constructor throws <tt>HeadlessException</tt>
+ * when there is no display.  The PApplet is therefore allocated as deserialization allocates objects,
+ * without running its constructors, and the fields that Nest uses are set up here:
+ * <tt>g</tt>, an offscreen renderer, <tt>width</tt> and <tt>height</tt>,
+ * and the registry of library methods, so that NestSpriteContainer can register for events.
+ * Nothing else of the PApplet is initialized; it must not be started with <tt>PApplet.main()</tt>.
+ * </p>
+ */
+final class Headless {
+	private Headless () {}
+	
+	/**
+	 * Returns a PApplet that draws into an offscreen JAVA2D renderer of the specified size.
+	 * @throws	Exception	Thrown if the PApplet cannot be allocated on this JVM.
+	 */
+	static PApplet applet (int width, int height) throws Exception {
+		return applet(new PGraphicsJava2D(), width, height);
+	}
+	
+	/**
+	 * Returns a PApplet that draws into <tt>renderer</tt>, sized to the specified size.
+	 * @throws	Exception	Thrown if the PApplet cannot be allocated on this JVM.
+	 */
+	static PApplet applet (PGraphics renderer, int width, int height) throws Exception {
+		PApplet p = allocate();
+		Field registerMap = PApplet.class.getDeclaredField("registerMap");
+		registerMap.setAccessible(true);
+		registerMap.set(p, new HashMap<String, Object>());
+		
+		p.width = width;
+		p.height = height;
+		renderer.setParent(p);
+		renderer.setPrimary(false);
+		renderer.setSize(width, height);
+		p.g = renderer;
+		return p;
+	}
+	
+	private static PApplet allocate () throws Exception {
+		// sun.reflect.ReflectionFactory is looked up reflectively, so that this compiles against any JDK.
+		Class<?> factoryClass = Class.forName("sun.reflect.ReflectionFactory");
+		Object factory = factoryClass.getMethod("getReflectionFactory").invoke(null);
+		Constructor<?> constructor = (Constructor<?>)factoryClass
+				.getMethod("newConstructorForSerialization", Class.class, Constructor.class)
+				.invoke(factory, PApplet.class, Object.class.getDeclaredConstructor());
+		return (PApplet)constructor.newInstance();
+	}
+}
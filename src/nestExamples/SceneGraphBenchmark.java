@@ -0,0 +1,441 @@
+package nestExamples;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.transmote.nest.NestSprite;
+import com.transmote.nest.NestSpriteContainer;
+import com.transmote.nest.events.Event;
+import com.transmote.nest.events.EventDispatcher;
+
+import processing.core.PApplet;
+
+/**
+ * <p>
+ * Microbenchmarks of the display list's hot paths, over trees of varying depth and fan-out:
+ * the <tt>update()</tt> pass (<tt>prerender()</tt>), the render pass, mouse event dispatch,
+ * <tt>hitTest()</tt>, <tt>localToGlobal()</tt> / <tt>globalToLocal()</tt>,
+ * <tt>addChild()</tt> / <tt>removeChild()</tt> churn, and <tt>EventDispatcher.dispatchEvent()</tt>.
+ * Results are printed to the console as a table, in nanoseconds per operation,
+ * with the standard deviation across measured iterations.
+ * </p><p>
+ * Each benchmark runs in timed iterations of <tt>ITERATION_MILLIS</tt>, after
+ * <tt>WARMUP_ITERATIONS</tt> untimed iterations to let the JIT compiler settle.
+ * Update and render times are taken from {@link NestSpriteContainer#stats()},
+ * which times the two passes separately.
+ * </p><p>
+ * Runs from <tt>main()</tt> without a window (see {@link Headless}), e.g. on a build server.
+ * The display list is drawn into an offscreen JAVA2D renderer, between <tt>beginDraw()</tt>
+ * and <tt>endDraw()</tt> around each benchmark, so render times exclude the cost of presenting the frame.
+ * </p><p>
+ * Tree shapes and iteration counts may be set from the command line, e.g.
+ * <tt>SceneGraphBenchmark shapes=1x1000,4x8 warmup=3 iterations=5 millis=100</tt>,
+ * where each shape is <tt>depth</tt>x<tt>fanOut</tt>, for
+ * <tt>fanOut + fanOut^2 + ... + fanOut^depth</tt> NestSprites.
+ * </p>
+ */
+public class SceneGraphBenchmark {
+	private static final int WIDTH = 800;
+	private static final int HEIGHT = 800;
+	
+	// {depth, fanOut}
+	private static int[][] SHAPES = { {1, 1000}, {3, 10}, {5, 4}, {10, 2}, {4, 10} };
+	private static int WARMUP_ITERATIONS = 5;
+	private static int MEASURED_ITERATIONS = 10;
+	private static int ITERATION_MILLIS = 200;
+	
+	// consumes benchmark results, so that the JIT compiler cannot eliminate the work.
+	private static volatile long sink = 0;
+	
+	private final PApplet p;
+	
+	
+	public static void main (String _args[]) {
+		for (int i=0; i<_args.length; i++) {
+			parseArg(_args[i]);
+		}
+		
+		SceneGraphBenchmark benchmark;
+		try {
+			benchmark = new SceneGraphBenchmark(Headless.applet(WIDTH, HEIGHT));
+		} catch (Exception e) {
+			System.out.println("SceneGraphBenchmark: could not create a PApplet:");
+			e.printStackTrace();
+			System.exit(1);
+			return;
+		}
+		benchmark.runAll();
+	}
+	
+	SceneGraphBenchmark (PApplet p) {
+		this.p = p;
+	}
+	
+	private void runAll () {
+		Benchmark[] benchmarks = {
+				new UpdateBenchmark(),
+				new RenderBenchmark(),
+				new MouseEventBenchmark("mouseEvent(PRESS)", processing.event.MouseEvent.PRESS),
+				new MouseEventBenchmark("mouseEvent(CLICK)", processing.event.MouseEvent.CLICK),
+				new HitTestBenchmark(),
+				new LocalToGlobalBenchmark(),
+				new GlobalToLocalBenchmark(),
+				new ChildChurnBenchmark(),
+				new DispatchEventBenchmark()
+		};
+		
+		System.out.println(String.format("%-22s %6s %7s %7s %6s %14s %12s", "Benchmark", "depth", "fanOut", "size", "iters", "ns/op", "stddev"));
+		for (int s=0; s<SHAPES.length; s++) {
+			for (int b=0; b<benchmarks.length; b++) {
+				run(benchmarks[b], SHAPES[s][0], SHAPES[s][1]);
+			}
+		}
+	}
+	
+	private void run (Benchmark benchmark, int depth, int fanOut) {
+		NestSpriteContainer container = new NestSpriteContainer(p);
+		int size = buildTree(container, depth, fanOut);
+		
+		double[] results = new double[MEASURED_ITERATIONS];
+		p.g.beginDraw();
+		try {
+			benchmark.setUp(p, container);
+			for (int i=0; i<WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+				double nanosPerOp = iterate(benchmark);
+				if (i >= WARMUP_ITERATIONS) {
+					results[i - WARMUP_ITERATIONS] = nanosPerOp;
+				}
+			}
+			benchmark.tearDown();
+		} finally {
+			p.g.endDraw();
+		}
+		container.dispose();
+		
+		double mean = 0;
+		for (int i=0; i<results.length; i++) {
+			mean += results[i];
+		}
+		mean /= results.length;
+		double variance = 0;
+		for (int i=0; i<results.length; i++) {
+			variance += (results[i] - mean) * (results[i] - mean);
+		}
+		double stddev = (results.length > 1) ? Math.sqrt(variance / (results.length - 1)) : 0;
+		
+		System.out.println(String.format("%-22s %6d %7d %7d %6d %14.1f %12.1f", benchmark.name, depth, fanOut, size, results.length, mean, stddev));
+	}
+	
+	/**
+	 * Run <tt>benchmark</tt> for ITERATION_MILLIS.
+	 * @return	Mean time per operation, in nanoseconds.
+	 */
+	private static double iterate (Benchmark benchmark) {
+		long iterationNanos = ITERATION_MILLIS * 1000000L;
+		long start = System.nanoTime();
+		long elapsed = 0;
+		long measured = 0;
+		long ops = 0;
+		long result = 0;
+		while (elapsed < iterationNanos) {
+			// check the clock only every few calls, so that the check costs little relative to fast operations.
+			for (int i=0; i<benchmark.callsPerCheck; i++) {
+				result += benchmark.op();
+			}
+			ops += benchmark.callsPerCheck;
+			elapsed = System.nanoTime() - start;
+		}
+		if (benchmark.selfTimed) {
+			// op() returned the time spent in the measured portion of each call.
+			measured = result;
+		} else {
+			measured = elapsed;
+			sink += result;
+		}
+		return (double)measured / ops;
+	}
+	
+	/**
+	 * Fill <tt>root</tt> with a tree of BenchmarkSprites.
+	 * @return	Number of NestSprites added.
+	 */
+	private static int buildTree (NestSprite root, int depth, int fanOut) {
+		if (depth == 0) { return 0; }
+		
+		int count = 0;
+		BenchmarkSprite sprite;
+		for (int i=0; i<fanOut; i++) {
+			sprite = new BenchmarkSprite();
+			sprite.x = 20 + (i % 32) * 24;
+			sprite.y = 20 + ((i / 32) % 32) * 24;
+			if (depth > 1) {
+				sprite.scaleX = sprite.scaleY = 0.5f;
+			}
+			root.addChild(sprite);
+			count += 1 + buildTree(sprite, depth - 1, fanOut);
+		}
+		return count;
+	}
+	
+	private static NestSprite deepestLeaf (NestSprite root) {
+		NestSprite sprite = root;
+		while (sprite.numChildren() > 0) {
+			sprite = sprite.getChildAt(sprite.numChildren() - 1);
+		}
+		return sprite;
+	}
+	
+	private static void parseArg (String arg) {
+		int eq = arg.indexOf('=');
+		if (eq < 0) { return; }
+		String key = arg.substring(0, eq);
+		String value = arg.substring(eq + 1);
+		try {
+			if (key.equals("shapes")) {
+				String[] shapes = value.split(",");
+				SHAPES = new int[shapes.length][];
+				for (int i=0; i<shapes.length; i++) {
+					String[] dims = shapes[i].split("x");
+					SHAPES[i] = new int[] { Integer.parseInt(dims[0]), Integer.parseInt(dims[1]) };
+				}
+			} else if (key.equals("warmup")) {
+				WARMUP_ITERATIONS = Integer.parseInt(value);
+			} else if (key.equals("iterations")) {
+				MEASURED_ITERATIONS = Math.max(1, Integer.parseInt(value));
+			} else if (key.equals("millis")) {
+				ITERATION_MILLIS = Math.max(1, Integer.parseInt(value));
+			}
+		} catch (Exception e) {
+			System.err.println("SceneGraphBenchmark: could not parse argument '"+ arg +"'");
+		}
+	}
+	
+	
+	/**
+	 * A NestSprite that moves, and draws a rect within its bounds.
+	 */
+	private static class BenchmarkSprite extends NestSprite {
+		BenchmarkSprite () {
+			setBounds(-8, -8, 16, 16);
+		}
+		
+		@Override
+		protected void update (PApplet p) {
+			rotationZ += 0.001f;
+		}
+		
+		@Override
+		protected void draw (PApplet p) {
+			p.rect(-8, -8, 16, 16);
+		}
+	}
+	
+	private static abstract class Benchmark {
+		final String name;
+		
+		// true if op() returns the nanoseconds spent in its measured portion,
+		// rather than a value to be consumed.
+		boolean selfTimed = false;
+		int callsPerCheck = 1;
+		
+		Benchmark (String name) {
+			this.name = name;
+		}
+		
+		void setUp (PApplet p, NestSpriteContainer container) {}
+		void tearDown () {}
+		abstract long op ();
+	}
+	
+	private static class UpdateBenchmark extends Benchmark {
+		NestSpriteContainer container;
+		
+		UpdateBenchmark () {
+			super("update (prerender)");
+			selfTimed = true;
+		}
+		void setUp (PApplet p, NestSpriteContainer container) {
+			this.container = container;
+			container.setStatsEnabled(true);
+		}
+		long op () {
+			container.updateDisplayList();
+			return container.stats().frame(0).updateNanos;
+		}
+	}
+	
+	private static class RenderBenchmark extends Benchmark {
+		NestSpriteContainer container;
+		
+		RenderBenchmark () {
+			super("render");
+			selfTimed = true;
+		}
+		void setUp (PApplet p, NestSpriteContainer container) {
+			this.container = container;
+			container.setStatsEnabled(true);
+		}
+		long op () {
+			container.updateDisplayList();
+			return container.stats().frame(0).renderNanos;
+		}
+	}
+	
+	private static class MouseEventBenchmark extends Benchmark {
+		final int action;
+		NestSpriteContainer container;
+		processing.event.MouseEvent event;
+		
+		MouseEventBenchmark (String name, int action) {
+			super(name);
+			this.action = action;
+		}
+		void setUp (PApplet p, NestSpriteContainer container) {
+			this.container = container;
+			// dispatch at a fixed location over the tree, rather than the actual mouse location.
+			p.mouseX = 100;
+			p.mouseY = 20;
+			container.updateDisplayList();
+			event = new processing.event.MouseEvent(null, 0, action, 0, p.mouseX, p.mouseY, PApplet.LEFT, 1);
+		}
+		long op () {
+			container.mouseEvent(event);
+			return 1;
+		}
+	}
+	
+	private static class HitTestBenchmark extends Benchmark {
+		NestSpriteContainer container;
+		final Point2D.Float[] points = new Point2D.Float[64];
+		int next = 0;
+		
+		HitTestBenchmark () {
+			super("hitTest");
+			callsPerCheck = 64;
+		}
+		void setUp (PApplet p, NestSpriteContainer container) {
+			this.container = container;
+			container.updateDisplayList();
+			Random random = new Random(1);
+			for (int i=0; i<points.length; i++) {
+				points[i] = new Point2D.Float(random.nextFloat() * p.width, random.nextFloat() * p.height);
+			}
+		}
+		long op () {
+			next = (next + 1) & (points.length - 1);
+			return container.hitTest(points[next], true) ? 1 : 0;
+		}
+	}
+	
+	private static class LocalToGlobalBenchmark extends Benchmark {
+		NestSprite leaf;
+		final Point2D.Float localPt = new Point2D.Float(3, 4);
+		final Point2D.Float globalPt = new Point2D.Float();
+		
+		LocalToGlobalBenchmark () {
+			super("localToGlobal");
+			callsPerCheck = 256;
+		}
+		void setUp (PApplet p, NestSpriteContainer container) {
+			container.updateDisplayList();
+			leaf = deepestLeaf(container);
+		}
+		long op () {
+			leaf.localToGlobal(localPt, globalPt);
+			return (long)globalPt.x;
+		}
+	}
+	
+	private static class GlobalToLocalBenchmark extends Benchmark {
+		NestSprite leaf;
+		final Point2D.Float globalPt = new Point2D.Float(300, 400);
+		final Point2D.Float localPt = new Point2D.Float();
+		
+		GlobalToLocalBenchmark () {
+			super("globalToLocal");
+			callsPerCheck = 256;
+		}
+		void setUp (PApplet p, NestSpriteContainer container) {
+			container.updateDisplayList();
+			leaf = deepestLeaf(container);
+		}
+		long op () {
+			leaf.globalToLocal(globalPt, localPt);
+			return (long)localPt.x;
+		}
+	}
+	
+	/**
+	 * Remove a leaf from its parent and add it back, cycling through all leaves.
+	 */
+	private static class ChildChurnBenchmark extends Benchmark {
+		final ArrayList<NestSprite> leaves = new ArrayList<NestSprite>();
+		int next = 0;
+		
+		ChildChurnBenchmark () {
+			super("removeChild+addChild");
+			callsPerCheck = 16;
+		}
+		void setUp (PApplet p, NestSpriteContainer container) {
+			leaves.clear();
+			collectLeaves(container);
+		}
+		void tearDown () {
+			leaves.clear();
+		}
+		long op () {
+			NestSprite leaf = leaves.get(next);
+			next = (next + 1) % leaves.size();
+			NestSprite parent = leaf.parent();
+			int index = parent.getChildIndex(leaf);
+			parent.removeChild(leaf);
+			parent.addChild(index, leaf);
+			return index;
+		}
+		private void collectLeaves (NestSprite sprite) {
+			if (sprite.numChildren() == 0) {
+				leaves.add(sprite);
+				return;
+			}
+			for (int i=0; i<sprite.numChildren(); i++) {
+				collectLeaves(sprite.getChildAt(i));
+			}
+		}
+	}
+	
+	/**
+	 * Dispatch an Event to as many Observers as the fan-out of the tree.
+	 */
+	private static class DispatchEventBenchmark extends Benchmark {
+		final EventDispatcher dispatcher = new EventDispatcher();
+		final Event event = new Event(Event.INIT);
+		
+		DispatchEventBenchmark () {
+			super("dispatchEvent");
+			callsPerCheck = 16;
+		}
+		void setUp (PApplet p, NestSpriteContainer container) {
+			dispatcher.deleteObservers();
+			for (int i=0; i<container.numChildren(); i++) {
+				dispatcher.addObserver(new CountingDispatcher());
+			}
+		}
+		void tearDown () {
+			dispatcher.deleteObservers();
+		}
+		long op () {
+			dispatcher.dispatchEvent(event);
+			return CountingDispatcher.count;
+		}
+	}
+	
+	private static class CountingDispatcher extends EventDispatcher {
+		static long count = 0;
+		
+		@Override
+		protected void handleEvent (Event evt) {
+			count++;
+		}
+	}
+}